@@ -0,0 +1,281 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Ant colony optimization (MAX-MIN ant system). Each ant builds a tour city by city, choosing among the
+ * feasible unvisited cities with probability proportional to pheromone times a time window heuristic
+ * that prefers short arcs, little waiting and little slack to the city's latest time. The ants of one
+ * iteration are built in parallel, then the pheromone matrix is updated once from the iteration's best
+ * and the overall best tour. Every ant has its own random stream, so a seed always gives the same tour.
+ */
+public class AntColony {
+
+    public static final int DEFAULT_ANTS = 16;
+    public static final int DEFAULT_ITERATIONS = 100;
+    // Largest instance solved, the pheromone matrix takes 8*n*n bytes (32 MB at this size)
+    public static final int MAX_CITIES = 2048;
+    // Weight of the heuristic against the pheromone, pheromone^1 * heuristic^2
+    private static final int BETA = 2;
+    private static final double EVAPORATION = 0.1;
+    // Ants built by one task before the range is split
+    private static final int ANTS_PER_TASK = 2;
+    private static final long DEFAULT_SEED = 42;
+
+    /**
+     * Solve TSPTW using ant colony optimization with the default settings on the common pool
+     *
+     * @param graph     The graph representing the TSPTW problem
+     * @param startCity The starting node
+     * @return A list of node names representing the path, or null if no ant found a valid path
+     * @throws IllegalArgumentException if there are more than {@link #MAX_CITIES} cities
+     */
+    public static List<String> solveTSPTW_AntColony(Graph graph, String startCity) {
+        CompactGraph compactGraph = graph.toCompactGraph();
+        int start = compactGraph.indexOf(startCity);
+        if (start == -1) {
+            return null; // Unknown start city
+        }
+        return compactGraph.toCityNames(solveTSPTW_AntColony(compactGraph, start, DEFAULT_ANTS, DEFAULT_ITERATIONS,
+                DEFAULT_SEED, ForkJoinPool.commonPool()));
+    }
+
+    /**
+     * Solve TSPTW using ant colony optimization on a compact graph
+     *
+     * @param graph      The compact graph representing the TSPTW problem
+     * @param startCity  The starting city id
+     * @param ants       Tours built per iteration
+     * @param iterations Number of pheromone updates
+     * @param seed       Seed of the ants' random streams
+     * @param pool       The pool building the ants of an iteration in parallel
+     * @return The best tour as city ids, or null if no ant found a valid tour
+     * @throws IllegalArgumentException if there are more than {@link #MAX_CITIES} cities
+     */
+    public static int[] solveTSPTW_AntColony(CompactGraph graph, int startCity, int ants, int iterations, long seed,
+                                             ForkJoinPool pool) {
+        return solveTSPTW_AntColony(graph, startCity, ants, iterations, seed, pool, null);
+    }
+
+    /**
+     * Same as {@link #solveTSPTW_AntColony(CompactGraph, int, int, int, long, ForkJoinPool)}, returning the best
+     * tour so far when the control says to stop. Every ant checks the control at each step, so a stop is
+     * seen within one step of the tours being built, not only between iterations.
+     *
+     * @param control Deadline and cancellation of the run, or null to run every iteration.
+     * @throws IllegalArgumentException if there are more than {@link #MAX_CITIES} cities
+     */
+    public static int[] solveTSPTW_AntColony(CompactGraph graph, int startCity, int ants, int iterations, long seed,
+                                             ForkJoinPool pool, SolverControl control) {
+        int n = graph.size();
+        if (n > MAX_CITIES) {
+            throw new IllegalArgumentException("Too many cities for the pheromone matrix: " + n + ", at most "
+                    + MAX_CITIES + ".");
+        }
+        if (n < 2) return null;
+        Colony colony = new Colony(graph, startCity, ants, control);
+
+        // The greedy tour sets the pheromone scale and is the first best tour
+        colony.offer(Greedy.solveTSPTW_Greedy(graph, startCity));
+        colony.resetPheromone();
+
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            if (control != null && control.shouldStop()) break;
+            pool.invoke(new AntTask(colony, seed, iteration, 0, ants));
+            colony.updatePheromone();
+        }
+        return colony.bestTour;
+    }
+
+    // Pheromone, the tours of the current iteration and the best tour so far
+    private static class Colony {
+        private final CompactGraph graph;
+        private final int startCity;
+        private final int n;
+        private final SolverControl control; // Null to build every tour to the end
+        private final double[] pheromone; // Row-major n*n, like the arc matrices of CompactGraph
+        private final int[][] tours; // Tour of every ant of the current iteration, null if the ant got stuck
+        private final int[] costs;
+        private int[] bestTour;
+        private int bestCost = Integer.MAX_VALUE;
+        private int bestTime = Integer.MAX_VALUE;
+        private double maxPheromone;
+        private double minPheromone;
+
+        private Colony(CompactGraph graph, int startCity, int ants, SolverControl control) {
+            this.graph = graph;
+            this.startCity = startCity;
+            this.n = graph.size();
+            this.control = control;
+            this.pheromone = new double[Math.toIntExact((long) n * n)];
+            this.tours = new int[ants][];
+            this.costs = new int[ants];
+        }
+
+        // Pheromone bounds follow the best cost, every arc starts at the upper bound
+        private void resetPheromone() {
+            maxPheromone = bestTour == null ? 1.0 : 1.0 / (EVAPORATION * Math.max(bestCost, 1));
+            minPheromone = maxPheromone / (2.0 * n);
+            Arrays.fill(pheromone, maxPheromone);
+        }
+
+        // Keeps the tour if it is cheaper, or returns earlier at the same cost
+        private boolean offer(int[] tour) {
+            if (tour == null) return false;
+            int[] result = graph.calculateFeasiblePathCost(tour);
+            if (result[0] < bestCost || (result[0] == bestCost && result[1] < bestTime)) {
+                bestTour = tour;
+                bestCost = result[0];
+                bestTime = result[1];
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Builds one ant's tour.
+         *
+         * @return the tour, or null if the ant reached a city with no feasible next city or the control said
+         * to stop
+         */
+        private int[] construct(Random random) {
+            int[] tour = new int[n + 1];
+            boolean[] visited = new boolean[n];
+            double[] weights = new double[n];
+            int currentCity = startCity;
+            int currentTime = 0;  // Start time is 0
+
+            tour[0] = startCity;
+            visited[startCity] = true;
+
+            for (int step = 1; step < n; step++) {
+                // A step costs O(n), so a large instance stops mid-tour instead of after the whole iteration
+                if (control != null && control.shouldStop()) {
+                    return null;
+                }
+                double total = 0;
+                int row = currentCity * n;
+                for (int city = 0; city < n; city++) {
+                    weights[city] = 0;
+                    if (visited[city]) continue;
+
+                    int travelTime = graph.travelTime(currentCity, city);
+                    if (travelTime == CompactGraph.NO_EDGE) continue;
+                    int arrivalTime = currentTime + travelTime;
+                    if (arrivalTime > graph.latest(city)) continue; // Latest time window violated
+
+                    int waiting = Math.max(graph.earliest(city) - arrivalTime, 0);
+                    int slack = graph.latest(city) - arrivalTime;
+                    double heuristic = 1.0 / (1.0 + graph.distance(currentCity, city) + waiting + slack);
+                    double weight = pheromone[row + city];
+                    for (int k = 0; k < BETA; k++) {
+                        weight *= heuristic;
+                    }
+                    weights[city] = weight;
+                    total += weight;
+                }
+
+                // If no valid next city is found
+                if (total == 0) {
+                    return null;
+                }
+
+                // Roulette wheel over the weights
+                double pick = random.nextDouble() * total;
+                int nextCity = -1;
+                for (int city = 0; city < n; city++) {
+                    if (weights[city] == 0) continue;
+                    nextCity = city;
+                    pick -= weights[city];
+                    if (pick <= 0) break;
+                }
+
+                visited[nextCity] = true;
+                tour[step] = nextCity;
+                currentTime = graph.getValidArrivalTime(currentCity, nextCity, currentTime);
+                currentCity = nextCity;
+            }
+
+            // Attempt to return to the start city
+            if (graph.getValidArrivalTime(currentCity, startCity, currentTime) == -1) {
+                return null;
+            }
+            tour[n] = startCity;
+            return tour;
+        }
+
+        /**
+         * Batched update after all ants of an iteration: evaporation on every arc, clamped to the current
+         * bounds, then a deposit on the arcs of the iteration's best tour and of the best tour so far, kept
+         * within the bounds.
+         */
+        private void updatePheromone() {
+            int iterationBest = -1;
+            for (int ant = 0; ant < tours.length; ant++) {
+                if (tours[ant] != null && (iterationBest == -1 || costs[ant] < costs[iterationBest])) {
+                    iterationBest = ant;
+                }
+            }
+            if (iterationBest != -1 && offer(tours[iterationBest])) {
+                maxPheromone = 1.0 / (EVAPORATION * Math.max(bestCost, 1));
+                minPheromone = maxPheromone / (2.0 * n);
+            }
+
+            // Both bounds are applied, the maximum drops when a first or much cheaper tour is found, and arcs
+            // above it would otherwise outweigh the best tour's capped deposits for dozens of iterations
+            for (int arc = 0; arc < pheromone.length; arc++) {
+                pheromone[arc] = Math.min(Math.max(pheromone[arc] * (1 - EVAPORATION), minPheromone), maxPheromone);
+            }
+            if (iterationBest != -1) {
+                deposit(tours[iterationBest], costs[iterationBest]);
+            }
+            if (bestTour != null) {
+                deposit(bestTour, bestCost);
+            }
+        }
+
+        private void deposit(int[] tour, int cost) {
+            double amount = 1.0 / Math.max(cost, 1);
+            for (int k = 0; k < tour.length - 1; k++) {
+                int arc = tour[k] * n + tour[k + 1];
+                pheromone[arc] = Math.min(pheromone[arc] + amount, maxPheromone);
+            }
+        }
+    }
+
+    // Builds the ants [fromAnt, toAnt) of one iteration, splitting the range between workers
+    private static class AntTask extends RecursiveAction {
+        private final Colony colony;
+        private final long seed;
+        private final int iteration;
+        private final int fromAnt;
+        private final int toAnt;
+
+        private AntTask(Colony colony, long seed, int iteration, int fromAnt, int toAnt) {
+            this.colony = colony;
+            this.seed = seed;
+            this.iteration = iteration;
+            this.fromAnt = fromAnt;
+            this.toAnt = toAnt;
+        }
+
+        @Override
+        protected void compute() {
+            if (toAnt - fromAnt > ANTS_PER_TASK) {
+                int middle = (fromAnt + toAnt) >>> 1;
+                invokeAll(new AntTask(colony, seed, iteration, fromAnt, middle),
+                        new AntTask(colony, seed, iteration, middle, toAnt));
+                return;
+            }
+            for (int ant = fromAnt; ant < toAnt; ant++) {
+                // The stream depends only on the seed, iteration and ant, not on the thread that runs it
+                Random random = new Random(seed + 0x9E3779B97F4A7C15L * ((long) iteration * colony.tours.length + ant + 1));
+                int[] tour = colony.construct(random);
+                colony.tours[ant] = tour;
+                colony.costs[ant] = tour == null ? Integer.MAX_VALUE : colony.graph.calculateFeasiblePathCost(tour)[0];
+            }
+        }
+    }
+}
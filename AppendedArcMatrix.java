@@ -0,0 +1,82 @@
+import java.util.Arrays;
+
+/**
+ * {@link ArcMatrix} of a matrix with cities appended after it was built. The arcs between the original
+ * cities are read from the base matrix, and every appended city keeps only its arcs to and from the cities
+ * with a lower id. Appending a city costs O(n) instead of the O(n^2) of copying the matrix, so a graph can
+ * grow one city at a time, as {@link CompactGraph#withCity} does for {@link OnlineRoute}.
+ * <p>
+ * A matrix is never changed, {@link #append} returns a new one that shares the base and the rows of the
+ * cities appended before.
+ */
+public final class AppendedArcMatrix implements ArcMatrix {
+
+    private final ArcMatrix base;
+    private final int baseSize;
+    private final int[][] to; // to[k][other] is the arc from other to city baseSize + k, for every lower id
+    private final int[][] from; // from[k][other] is the arc from city baseSize + k to other
+
+    private AppendedArcMatrix(ArcMatrix base, int[][] to, int[][] from) {
+        this.base = base;
+        this.baseSize = base.size();
+        this.to = to;
+        this.from = from;
+    }
+
+    /**
+     * @param matrix   The matrix to grow, an appended matrix is extended instead of wrapped again.
+     * @param arcsTo   Arc from every city of the matrix to the new one, {@link CompactGraph#NO_EDGE} if none.
+     *                 Owned by the new matrix.
+     * @param arcsFrom Arc from the new city to every city of the matrix. Owned by the new matrix.
+     * @return the matrix with one more city, whose id is matrix.size()
+     * @throws IllegalArgumentException if an array does not cover every city of the matrix
+     */
+    static AppendedArcMatrix append(ArcMatrix matrix, int[] arcsTo, int[] arcsFrom) {
+        if (arcsTo.length != matrix.size() || arcsFrom.length != matrix.size()) {
+            throw new IllegalArgumentException("Array sizes do not match the number of cities.");
+        }
+        ArcMatrix base = matrix;
+        int[][] to = new int[0][];
+        int[][] from = new int[0][];
+        if (matrix instanceof AppendedArcMatrix appended) {
+            base = appended.base;
+            to = appended.to;
+            from = appended.from;
+        }
+        int k = to.length;
+        to = Arrays.copyOf(to, k + 1);
+        from = Arrays.copyOf(from, k + 1);
+        to[k] = arcsTo;
+        from[k] = arcsFrom;
+        return new AppendedArcMatrix(base, to, from);
+    }
+
+    @Override
+    public int size() {
+        return baseSize + to.length;
+    }
+
+    @Override
+    public int get(int from, int to) {
+        if (from < baseSize && to < baseSize) {
+            return base.get(from, to);
+        }
+        if (from == to) {
+            return CompactGraph.NO_EDGE;
+        }
+        // The row of the higher of the two cities holds the arc
+        return from > to ? this.from[from - baseSize][to] : this.to[to - baseSize][from];
+    }
+
+    @Override
+    public void getRow(int from, int[] row, int offset) {
+        if (from >= baseSize) {
+            ArcMatrix.super.getRow(from, row, offset);
+            return;
+        }
+        base.getRow(from, row, offset);
+        for (int k = 0; k < to.length; k++) {
+            row[offset + baseSize + k] = to[k][from];
+        }
+    }
+}
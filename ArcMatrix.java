@@ -0,0 +1,30 @@
+/**
+ * Read-only view of a square matrix of arc values, {@link CompactGraph#NO_EDGE} where two cities are not
+ * connected. {@link CompactGraph} reads its distances and travel times through this view, so the values
+ * can live on the heap ({@link ArrayArcMatrix}) or in a memory-mapped file ({@link MappedArcMatrix}).
+ */
+public interface ArcMatrix {
+
+    /**
+     * @return the number of rows, which is also the number of columns
+     */
+    int size();
+
+    /**
+     * @return the value of the arc from one city to another, or {@link CompactGraph#NO_EDGE}
+     */
+    int get(int from, int to);
+
+    /**
+     * Copies one row into an array, for callers that read many values of the same row.
+     *
+     * @param from   the row
+     * @param row    the array to fill
+     * @param offset index in row of the first value
+     */
+    default void getRow(int from, int[] row, int offset) {
+        for (int to = 0; to < size(); to++) {
+            row[offset + to] = get(from, to);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * {@link ArcMatrix} backed by a row-major int array on the heap.
+ */
+public final class ArrayArcMatrix implements ArcMatrix {
+
+    final int size;
+    final int[] values; // Row-major size*size values, read directly by CompactGraph
+
+    /**
+     * @param size   Number of rows and columns.
+     * @param values Row-major size*size values, owned by the new matrix.
+     */
+    ArrayArcMatrix(int size, int[] values) {
+        if (values.length != size * size) {
+            throw new IllegalArgumentException("Array size does not match the number of cities.");
+        }
+        this.size = size;
+        this.values = values;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int get(int from, int to) {
+        return values[from * size + to];
+    }
+
+    @Override
+    public void getRow(int from, int[] row, int offset) {
+        System.arraycopy(values, from * size, row, offset, size);
+    }
+}
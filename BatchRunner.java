@@ -0,0 +1,429 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Headless batch solving of many instance files, for servers where the Swing entry points are of no use.
+ * <p>
+ * Each instance goes through two stages: a loader thread reads it with {@link InstanceFile} or
+ * {@link InstanceReader}, then a worker solves it from city 0 under its own time budget. The stages run on
+ * separate pools, so loading the next instances overlaps with solving the current ones. At most maxInFlight
+ * instances are loaded but not yet written, and the reader of the file list blocks until one is written,
+ * which bounds the memory of the batch however many files there are.
+ * One record is written per instance, in the order they finish, as a JSON line or a CSV row.
+ * <pre>
+ * java BatchRunner [--solver NAME|portfolio] [--budget-ms N] [--workers N] [--loaders N] [--in-flight N]
+ *                  [--format jsonl|csv] [--output FILE] (DIRECTORY | -)
+ * </pre>
+ * A directory is walked recursively, - reads one file path per line from standard input. The default solver
+ * is the {@link PortfolioSolver} of every built-in solver, whose solvers share one pool with a thread for every
+ * solver of every worker. The parallel solvers also start a pool of their own for each solve, sized to their
+ * share of the processors among all the solvers of all the workers. A race returns only once all its solvers
+ * have, so an instance's slot in flight is given back only when no thread still uses its graph. The default is one worker per processor, or per
+ * portfolio width of processors with the portfolio, one loader, twice as many instances in flight as workers,
+ * and JSON lines on standard output.
+ */
+public class BatchRunner {
+
+    public static final long DEFAULT_BUDGET_MILLIS = 1000;
+
+    private final TsptwSolver solver;
+    private final long budgetMillis;
+    private final int workers;
+    private final int loaders;
+    private final int maxInFlight;
+
+    /**
+     * @param solver       The solver every instance is solved with, it must be safe to share between threads.
+     * @param budgetMillis Wall-clock time each solve may take.
+     * @param workers      Instances solved at the same time.
+     * @param loaders      Instances loaded at the same time.
+     * @param maxInFlight  Most instances loaded or being loaded and not yet written, at least workers.
+     */
+    public BatchRunner(TsptwSolver solver, long budgetMillis, int workers, int loaders, int maxInFlight) {
+        if (workers < 1 || loaders < 1 || maxInFlight < workers) {
+            throw new IllegalArgumentException("Need at least one worker and loader, and maxInFlight >= workers.");
+        }
+        this.solver = solver;
+        this.budgetMillis = budgetMillis;
+        this.workers = workers;
+        this.loaders = loaders;
+        this.maxInFlight = maxInFlight;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String solverName = "portfolio";
+        long budgetMillis = DEFAULT_BUDGET_MILLIS;
+        int workers = -1;
+        int loaders = 1;
+        int maxInFlight = -1;
+        Format format = Format.JSONL;
+        Path output = null;
+        String input = null;
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                if (input != null) usage("Unexpected argument: " + arg);
+                input = arg;
+                continue;
+            }
+            if (i + 1 == args.length) usage("Missing value of " + arg);
+            String value = args[++i];
+            switch (arg) {
+                case "--solver" -> solverName = value;
+                case "--budget-ms" -> budgetMillis = Long.parseLong(value);
+                case "--workers" -> workers = Integer.parseInt(value);
+                case "--loaders" -> loaders = Integer.parseInt(value);
+                case "--in-flight" -> maxInFlight = Integer.parseInt(value);
+                case "--format" -> format = Format.valueOf(value.toUpperCase());
+                case "--output" -> output = Path.of(value);
+                default -> usage("Unknown option: " + arg);
+            }
+        }
+        if (input == null) usage("Missing instance directory or -");
+
+        // A portfolio runs all its solvers at once, so its default leaves a processor to each of them
+        boolean portfolio = solverName.equalsIgnoreCase("portfolio");
+        int processors = Runtime.getRuntime().availableProcessors();
+        int width = portfolio ? Solvers.all().size() : 1;
+        if (workers == -1) workers = Math.max(1, processors / width);
+        // Each parallel solver gets its share of the processors for its own pool
+        int parallelism = Math.max(1, processors / (workers * width));
+        ExecutorService solverPool = portfolio ? Executors.newFixedThreadPool(workers * width, named("portfolio-solver")) : null;
+        TsptwSolver solver = portfolio ? PortfolioSolver.ofAll(solverPool, parallelism)
+                : Solvers.byName(solverName, parallelism);
+        BatchRunner runner = new BatchRunner(solver, budgetMillis, workers, loaders,
+                maxInFlight == -1 ? 2 * workers : maxInFlight);
+
+        Writer out = output == null
+                ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+                : Files.newBufferedWriter(output);
+        Summary summary;
+        try {
+            if (input.equals("-")) {
+                BufferedReader paths = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+                Iterator<Path> files = paths.lines().filter(line -> !line.isBlank()).map(line -> Path.of(line.trim())).iterator();
+                summary = runner.run(files, out, format);
+            } else {
+                try (Stream<Path> walk = Files.walk(Path.of(input))) {
+                    summary = runner.run(walk.filter(Files::isRegularFile).iterator(), out, format);
+                }
+            }
+        } finally {
+            if (solverPool != null) solverPool.shutdown();
+        }
+        if (output == null) out.flush();
+        else out.close();
+        System.err.println(summary);
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println("Usage: java BatchRunner [--solver NAME|portfolio] [--budget-ms N] [--workers N] [--loaders N]"
+                + " [--in-flight N] [--format jsonl|csv] [--output FILE] (DIRECTORY | -)");
+        System.exit(2);
+    }
+
+    /**
+     * Solves every instance and writes one record per instance. A file that fails to load or solve gets a
+     * record with its error, the batch goes on.
+     *
+     * @param files  The instance files, read lazily as the pipeline has room.
+     * @param out    Receives the records, it is flushed but not closed.
+     * @param format The record format, a CSV header is written first.
+     * @return how many instances were solved, had no feasible tour or failed
+     * @throws IOException          if writing a record failed, the batch stops at that point
+     * @throws InterruptedException if the thread was interrupted while waiting for room in the pipeline
+     */
+    public Summary run(Iterator<Path> files, Writer out, Format format) throws IOException, InterruptedException {
+        long startNanos = System.nanoTime();
+        ExecutorService loadPool = Executors.newFixedThreadPool(loaders, named("batch-loader"));
+        ExecutorService solvePool = Executors.newFixedThreadPool(workers, named("batch-worker"));
+        Semaphore room = new Semaphore(maxInFlight);
+        Summary summary = new Summary();
+        RecordWriter writer = new RecordWriter(out, format);
+
+        try {
+            writer.writeHeader();
+            while (files.hasNext() && !writer.hasFailed()) {
+                Path file = files.next();
+                room.acquire(); // Backpressure: wait until an earlier instance is written
+                CompletableFuture.supplyAsync(() -> load(file), loadPool)
+                        .thenApplyAsync(this::solve, solvePool)
+                        .whenComplete((record, failure) -> {
+                            try {
+                                if (record == null) record = failed(file, failure);
+                                summary.count(record);
+                                writer.write(record);
+                            } finally {
+                                room.release();
+                            }
+                        });
+            }
+            room.acquire(maxInFlight); // Every record is written once all the room is back
+        } finally {
+            loadPool.shutdownNow();
+            solvePool.shutdownNow();
+        }
+        writer.flush();
+        summary.elapsedNanos = System.nanoTime() - startNanos;
+        return summary;
+    }
+
+    // Loading stage, the record carries the graph to the solving stage
+    private Record load(Path file) {
+        long startNanos = System.nanoTime();
+        Record record = new Record(file);
+        try {
+            record.graph = InstanceFile.isInstanceFile(file) ? InstanceFile.open(file) : InstanceReader.read(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        record.loadNanos = System.nanoTime() - startNanos;
+        return record;
+    }
+
+    // Solving stage, drops the graph once the tour is turned into names
+    private Record solve(Record record) {
+        CompactGraph graph = record.graph;
+        record.cities = graph.size();
+        if (graph.size() > 0) {
+            record.result = solver.solve(graph, 0, SolverControl.withBudget(budgetMillis));
+            record.path = record.result.getPath(graph);
+        }
+        record.graph = null;
+        return record;
+    }
+
+    // Record of an instance whose stage threw
+    private static Record failed(Path file, Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        if (cause instanceof UncheckedIOException && cause.getCause() != null) cause = cause.getCause();
+        Record record = new Record(file);
+        record.error = cause.getClass().getSimpleName() + ": " + cause.getMessage();
+        return record;
+    }
+
+    private static ThreadFactory named(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true); // A solver that ignores its budget must not keep the JVM alive
+            return thread;
+        };
+    }
+
+    /**
+     * Output format of the records: JSON lines, or CSV with a header row and the tour as space-separated names.
+     */
+    public enum Format {
+        JSONL, CSV
+    }
+
+    // One instance on its way through the pipeline
+    private static class Record {
+        private final Path file;
+        private CompactGraph graph;
+        private int cities = -1;
+        private SolverResult result;
+        private List<String> path;
+        private long loadNanos;
+        private String error;
+
+        private Record(Path file) {
+            this.file = file;
+        }
+    }
+
+    // Writes records from the worker threads one at a time, remembering the first write failure
+    private static class RecordWriter {
+        private static final String[] COLUMNS = {"instance", "cities", "solver", "cost", "time", "provenOptimal",
+                "loadMillis", "solveMillis", "tour", "error"};
+
+        private final Writer out;
+        private final Format format;
+        private IOException failure;
+
+        private RecordWriter(Writer out, Format format) {
+            this.out = out;
+            this.format = format;
+        }
+
+        private synchronized boolean hasFailed() {
+            return failure != null;
+        }
+
+        private synchronized void writeHeader() throws IOException {
+            if (format == Format.CSV) {
+                out.write(String.join(",", COLUMNS));
+                out.write('\n');
+            }
+        }
+
+        private synchronized void write(Record record) {
+            if (failure != null) return;
+            SolverResult result = record.result;
+            boolean hasTour = result != null && result.hasTour();
+            Object[] values = {
+                    record.file.toString(),
+                    record.cities == -1 ? null : record.cities,
+                    result == null ? null : result.getSolverName(),
+                    hasTour ? result.getCost() : null,
+                    hasTour ? result.getTime() : null,
+                    result == null ? null : result.isProvenOptimal(),
+                    record.error == null ? record.loadNanos / 1e6 : null,
+                    result == null ? null : result.getElapsedNanos() / 1e6,
+                    hasTour ? record.path : null,
+                    record.error};
+            try {
+                out.write(format == Format.CSV ? toCsv(values) : toJson(values));
+                out.write('\n');
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+
+        private synchronized void flush() throws IOException {
+            if (failure != null) throw failure;
+            out.flush();
+        }
+
+        private static String toJson(Object[] values) {
+            StringBuilder json = new StringBuilder("{");
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (i > 0) json.append(',');
+                appendJsonString(json, COLUMNS[i]).append(':');
+                Object value = values[i];
+                if (value instanceof String text) {
+                    appendJsonString(json, text);
+                } else if (value instanceof List<?> names) {
+                    json.append('[');
+                    for (int k = 0; k < names.size(); k++) {
+                        if (k > 0) json.append(',');
+                        appendJsonString(json, String.valueOf(names.get(k)));
+                    }
+                    json.append(']');
+                } else if (value instanceof Double millis) {
+                    json.append(String.format(Locale.ROOT, "%.3f", millis));
+                } else {
+                    json.append(value); // Numbers, booleans and null
+                }
+            }
+            return json.append('}').toString();
+        }
+
+        private static StringBuilder appendJsonString(StringBuilder json, String text) {
+            json.append('"');
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                switch (c) {
+                    case '"' -> json.append("\\\"");
+                    case '\\' -> json.append("\\\\");
+                    case '\n' -> json.append("\\n");
+                    case '\r' -> json.append("\\r");
+                    case '\t' -> json.append("\\t");
+                    default -> {
+                        if (c < 0x20) json.append(String.format("\\u%04x", (int) c));
+                        else json.append(c);
+                    }
+                }
+            }
+            return json.append('"');
+        }
+
+        private static String toCsv(Object[] values) {
+            StringBuilder csv = new StringBuilder();
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) csv.append(',');
+                Object value = values[i];
+                String text;
+                if (value == null) {
+                    text = "";
+                } else if (value instanceof List<?> names) {
+                    StringBuilder tour = new StringBuilder();
+                    for (Object name : names) {
+                        tour.append(tour.length() == 0 ? "" : " ").append(name);
+                    }
+                    text = tour.toString();
+                } else if (value instanceof Double millis) {
+                    text = String.format(Locale.ROOT, "%.3f", millis);
+                } else {
+                    text = value.toString();
+                }
+                if (text.indexOf(',') >= 0 || text.indexOf('"') >= 0 || text.indexOf('\n') >= 0) {
+                    text = '"' + text.replace("\"", "\"\"") + '"';
+                }
+                csv.append(text);
+            }
+            return csv.toString();
+        }
+    }
+
+    /**
+     * Counts of a finished batch.
+     */
+    public static class Summary {
+        private final AtomicInteger solved = new AtomicInteger();
+        private final AtomicInteger noTour = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private long elapsedNanos;
+
+        private Summary() {
+        }
+
+        private void count(Record record) {
+            if (record.error != null) failed.incrementAndGet();
+            else if (record.result != null && record.result.hasTour()) solved.incrementAndGet();
+            else noTour.incrementAndGet();
+        }
+
+        /**
+         * @return instances with a feasible tour
+         */
+        public int getSolved() {
+            return solved.get();
+        }
+
+        /**
+         * @return instances loaded and solved without finding a feasible tour
+         */
+        public int getNoTour() {
+            return noTour.get();
+        }
+
+        /**
+         * @return instances that could not be loaded or whose solver threw
+         */
+        public int getFailed() {
+            return failed.get();
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "BatchRunner.Summary {solved=" + getSolved() + ", noTour=" + getNoTour() + ", failed=" + getFailed()
+                    + ", elapsedMillis=" + elapsedNanos / 1_000_000 + "}";
+        }
+    }
+}
@@ -0,0 +1,265 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+public class BranchAndBound {
+
+    // Most cities of a search, the visited cities of a node are a bit mask in one long
+    public static final int MAX_CITIES = 64;
+    // Open nodes kept by the best-first search before it dives depth-first to stay in memory
+    public static final int DEFAULT_MAX_OPEN_NODES = 1 << 20;
+
+    /**
+     * Solves the TSPTW problem exactly using best-first branch and bound.
+     *
+     * @param graph     The graph object containing cities and connections.
+     * @param startCity The starting city name.
+     * @return The optimal path as a list of city names, or null if no valid path exists.
+     * @throws IllegalArgumentException if there are more than {@link #MAX_CITIES} cities
+     */
+    public static List<String> solveTSPTW_BranchAndBound(Graph graph, String startCity) {
+        // Searches the reduced graph, the reduction stays cached on the graph with what it removed
+        TimeWindowReduction reduction = graph.getReduction(startCity);
+        if (reduction == null || reduction.isInfeasible()) {
+            return null; // Unknown start city or no feasible tour
+        }
+        CompactGraph reduced = reduction.getGraph();
+        int start = reduced.indexOf(startCity);
+        return reduced.toCityNames(solveTSPTW_BranchAndBound(reduced, start, true, DEFAULT_MAX_OPEN_NODES));
+    }
+
+    /**
+     * Solves the TSPTW problem exactly using branch and bound. A partial tour is pruned when it breaks a
+     * time window, when an unvisited city's latest time has passed, or when its lower bound exceeds the
+     * best tour found. The lower bound adds, for every city still to enter (including the return to the
+     * start), the cheapest arc that can enter it from a city not yet left.
+     *
+     * @param graph        The compact graph containing cities and connections.
+     * @param start        The starting city id.
+     * @param bestFirst    True to expand the node with the lowest bound first, false for depth-first search.
+     * @param maxOpenNodes In best-first mode, once this many nodes are open new nodes are explored
+     *                     depth-first instead of being queued, which bounds the memory.
+     * @return The optimal tour as city ids, or null if no valid tour exists.
+     * @throws IllegalArgumentException if there are more than {@link #MAX_CITIES} cities
+     */
+    public static int[] solveTSPTW_BranchAndBound(CompactGraph graph, int start, boolean bestFirst, int maxOpenNodes) {
+        return solveTSPTW_BranchAndBound(graph, start, bestFirst, maxOpenNodes, null);
+    }
+
+    /**
+     * Same as {@link #solveTSPTW_BranchAndBound(CompactGraph, int, boolean, int)}, returning the best tour found
+     * so far as soon as the control says to stop.
+     *
+     * @param control Deadline and cancellation of the run, or null to always finish.
+     * @return The best tour found as city ids, optimal unless the control stopped the search, or null.
+     * @throws IllegalArgumentException if there are more than {@link #MAX_CITIES} cities
+     */
+    public static int[] solveTSPTW_BranchAndBound(CompactGraph graph, int start, boolean bestFirst, int maxOpenNodes,
+                                                  SolverControl control) {
+        int n = graph.size();
+        if (n < 2) return null;
+        if (n > MAX_CITIES) {
+            throw new IllegalArgumentException("Too many cities for branch and bound: " + n + ", at most "
+                    + MAX_CITIES + ".");
+        }
+
+        Search search = new Search(graph, start, control);
+
+        // The greedy tour, when it exists, gives the first upper bound
+        int[] greedyTour = Greedy.solveTSPTW_Greedy(graph, start);
+        if (greedyTour != null) {
+            search.offer(greedyTour);
+        }
+
+        Node root = new Node(null, start, 1L << start, 1, 0, 0, 0);
+        root.bound = search.lowerBound(root);
+        if (bestFirst) {
+            search.bestFirst(root, maxOpenNodes);
+        } else {
+            search.depthFirst(root);
+        }
+        return search.optimalTour;
+    }
+
+    // A partial tour, linked to its parent so the open list does not copy paths
+    private static class Node implements Comparable<Node> {
+        private final Node parent;
+        private final int city; // Last city of the partial tour
+        private final long visited; // Cities on the partial tour, including the start
+        private final int depth; // Number of cities on the partial tour
+        private final int time; // Time we leave the last city
+        private final int cost;
+        private int bound;
+
+        private Node(Node parent, int city, long visited, int depth, int time, int cost, int bound) {
+            this.parent = parent;
+            this.city = city;
+            this.visited = visited;
+            this.depth = depth;
+            this.time = time;
+            this.cost = cost;
+            this.bound = bound;
+        }
+
+        @Override
+        public int compareTo(Node other) {
+            // Lowest bound first, deeper nodes first on ties so complete tours are reached quickly
+            if (bound != other.bound) return Integer.compare(bound, other.bound);
+            return Integer.compare(other.depth, depth);
+        }
+    }
+
+    private static class Search {
+        // Nodes expanded between two polls of the control
+        private static final int POLL_INTERVAL = 1 << 10;
+
+        private final CompactGraph graph;
+        private final int start;
+        private final int n;
+        private final SolverControl control; // Null when the search always finishes
+        private int[] optimalTour;
+        private int optimalCost = Integer.MAX_VALUE;
+        private int optimalTime = Integer.MAX_VALUE;
+        private int untilPoll = POLL_INTERVAL;
+        private boolean stopped;
+
+        private Search(CompactGraph graph, int start, SolverControl control) {
+            this.graph = graph;
+            this.start = start;
+            this.n = graph.size();
+            this.control = control;
+        }
+
+        private void bestFirst(Node root, int maxOpenNodes) {
+            PriorityQueue<Node> open = new PriorityQueue<>();
+            open.add(root);
+            while (!open.isEmpty()) {
+                Node node = open.poll();
+                if (node.bound > optimalCost) break; // Every open node is at least as bad
+                if (isStopped()) return;
+
+                if (open.size() >= maxOpenNodes) {
+                    depthFirst(node); // Open list is full, finish this subtree in O(n) memory
+                    continue;
+                }
+                open.addAll(expand(node));
+            }
+        }
+
+        private void depthFirst(Node node) {
+            if (node.bound > optimalCost || isStopped()) return;
+            List<Node> children = expand(node);
+            Collections.sort(children); // Visit the most promising children first
+            for (Node child : children) {
+                depthFirst(child);
+            }
+        }
+
+        /**
+         * Creates the feasible children of a node that may still beat the incumbent.
+         * Complete tours are offered to the incumbent directly and produce no child.
+         */
+        private List<Node> expand(Node node) {
+            List<Node> children = new ArrayList<>();
+            if (node.depth == n) {
+                close(node);
+                return children;
+            }
+
+            for (int city = 0; city < n; city++) {
+                if ((node.visited & (1L << city)) != 0) continue;
+
+                int arrivalTime = graph.getValidArrivalTime(node.city, city, node.time);
+                if (arrivalTime == -1) continue;
+
+                Node child = new Node(node, city, node.visited | (1L << city), node.depth + 1, arrivalTime,
+                        node.cost + graph.distance(node.city, city), 0);
+                if (missesDeadline(child)) continue;
+
+                child.bound = lowerBound(child);
+                if (child.bound != Integer.MAX_VALUE && child.bound <= optimalCost) {
+                    children.add(child);
+                }
+            }
+            return children;
+        }
+
+        // Polls the control every POLL_INTERVAL calls, the answer sticks once it is true
+        private boolean isStopped() {
+            if (control == null || stopped) return stopped;
+            if (--untilPoll == 0) {
+                untilPoll = POLL_INTERVAL;
+                stopped = control.shouldStop();
+            }
+            return stopped;
+        }
+
+        // Returns to the start city and records the tour if it beats the best one
+        private void close(Node node) {
+            int time = graph.getValidArrivalTime(node.city, start, node.time);
+            if (time == -1) return;
+            int cost = node.cost + graph.distance(node.city, start);
+            if (cost < optimalCost || (cost == optimalCost && time < optimalTime)) {
+                optimalCost = cost;
+                optimalTime = time;
+                optimalTour = new int[n + 1];
+                optimalTour[n] = start;
+                for (Node current = node; current != null; current = current.parent) {
+                    optimalTour[current.depth - 1] = current.city;
+                }
+            }
+        }
+
+        // Records a complete tour found outside the search, such as the greedy start
+        private void offer(int[] tour) {
+            int[] result = graph.calculateFeasiblePathCost(tour);
+            if (result != null) {
+                optimalTour = tour.clone();
+                optimalCost = result[0];
+                optimalTime = result[1];
+            }
+        }
+
+        // True if an unvisited city closes before we can leave the last city
+        private boolean missesDeadline(Node node) {
+            for (int city = 0; city < n; city++) {
+                if ((node.visited & (1L << city)) == 0 && graph.latest(city) < node.time) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Cost so far plus, for each unvisited city and for the start city, the cheapest arc into it from
+         * the last city or another unvisited city. Every completion uses one such arc per city, so the
+         * bound never exceeds the cost of a feasible completion.
+         */
+        private int lowerBound(Node node) {
+            long remaining = ~node.visited & (n == MAX_CITIES ? -1L : (1L << n) - 1);
+            if (remaining == 0) {
+                int distance = graph.distance(node.city, start);
+                return distance == CompactGraph.NO_EDGE ? Integer.MAX_VALUE : node.cost + distance;
+            }
+
+            long bound = node.cost;
+            long sources = remaining | (1L << node.city);
+            for (long targets = remaining | (1L << start); targets != 0; targets &= targets - 1) {
+                int to = Long.numberOfTrailingZeros(targets);
+                // The start city can only be entered from an unvisited city, the other cities from any source
+                long from = to == start ? remaining : sources & ~(1L << to);
+                int cheapest = Integer.MAX_VALUE;
+                for (; from != 0; from &= from - 1) {
+                    int distance = graph.distance(Long.numberOfTrailingZeros(from), to);
+                    if (distance != CompactGraph.NO_EDGE && distance < cheapest) {
+                        cheapest = distance;
+                    }
+                }
+                if (cheapest == Integer.MAX_VALUE) return Integer.MAX_VALUE; // A city cannot be entered at all
+                bound += cheapest;
+            }
+            return (int) Math.min(bound, Integer.MAX_VALUE);
+        }
+    }
+}
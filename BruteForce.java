@@ -1,6 +1,8 @@
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class BruteForce {
 
@@ -10,82 +12,317 @@ public class BruteForce {
      * @param graph The graph object containing cities and connections.
      * @param start The starting city name.
      * @return The optimal path as a list of city names, or null if no valid path exists.
+     * @throws IllegalArgumentException if there are more than {@link TimeWindowReduction#MAX_CITIES} cities
      */
     public static List<String> solveTSPTW_BruteForce(Graph graph, String start) {
-        // Get all cities in the graph
-        List<String> cities = graph.getAllCities();
-
-        // Remove the start city from the list for permutations
-        cities.remove(start);
-
-        // Generate all permutations of the remaining cities
-        List<List<String>> permutations = generatePermutations(cities);
-
-        // Variables to store the optimal path, cost, and time
-        List<String> optimalPath = null;
-        int optimalCost = Integer.MAX_VALUE;
-        int optimalTime = Integer.MAX_VALUE;
-
-        // Evaluate each permutation
-        for (List<String> perm : permutations) {
-            // Add the start city to the beginning and end of the path
-            List<String> path = new ArrayList<>();
-            path.add(start);
-            path.addAll(perm);
-            path.add(start);
-
-            // Calculate the cost and time of the path
-            int[] result = graph.calculateFeasiblePathCost(path);
-            if (result == null) {
-                continue; // Skip invalid paths
-            }
-            int cost = result[0]; // Total distance
-            int time = result[1]; // Total time
+        // Arcs and window slack that no feasible tour can use are removed before the search,
+        // the reduction stays cached on the graph with what it removed
+        TimeWindowReduction reduction = graph.getReduction(start);
+        if (reduction == null || reduction.isInfeasible()) {
+            return null; // Unknown start city or no feasible tour
+        }
+        CompactGraph reduced = reduction.getGraph();
+        return reduced.toCityNames(solveTSPTW_BruteForce(reduced, reduced.indexOf(start)));
+    }
 
-            // Update the optimal path if it's better
-            if (cost < optimalCost || (cost == optimalCost && time < optimalTime)) {
-                optimalCost = cost;
-                optimalTime = time;
-                optimalPath = path;
+    /**
+     * Solves the TSPTW problem using a brute-force approach on a compact graph.
+     *
+     * @param graph The compact graph containing cities and connections.
+     * @param start The starting city id.
+     * @return The optimal tour as city ids (starting and ending at start), or null if no valid tour exists.
+     */
+    public static int[] solveTSPTW_BruteForce(CompactGraph graph, int start) {
+        return solveTSPTW_BruteForce(graph, start, null);
+    }
+
+    /**
+     * Same as {@link #solveTSPTW_BruteForce(CompactGraph, int)}, returning the best tour found so far as soon
+     * as the control says to stop.
+     *
+     * @param graph   The compact graph containing cities and connections.
+     * @param start   The starting city id.
+     * @param control Deadline and cancellation of the run, or null to always finish.
+     * @return The best tour found as city ids, optimal unless the control stopped the search, or null.
+     */
+    public static int[] solveTSPTW_BruteForce(CompactGraph graph, int start, SolverControl control) {
+        int n = graph.size();
+
+        // Tour layout: start, the other cities in permutation order, start
+        int[] tour = new int[n + 1];
+        tour[0] = start;
+        tour[n] = start;
+        int position = 1;
+        for (int city = 0; city < n; city++) {
+            if (city != start) {
+                tour[position++] = city;
             }
         }
 
-        // Return the optimal path, or null if no valid path exists
-        return optimalPath;
+        Search search = new Search(graph, tour, null, control);
+        search.extend(1, start, 0, 0);
+        return search.optimalTour;
     }
 
-
     /**
-     * Generates all permutations of a list of cities.
+     * Solves the TSPTW problem exactly using all cores of the common fork-join pool.
      *
-     * @param cities The list of city names.
-     * @return A list of all permutations.
+     * @param graph The graph object containing cities and connections.
+     * @param start The starting city name.
+     * @return The optimal path as a list of city names, or null if no valid path exists.
+     * @throws IllegalArgumentException if there are more than {@link TimeWindowReduction#MAX_CITIES} cities
      */
-    private static List<List<String>> generatePermutations(List<String> cities) {
-        List<List<String>> result = new ArrayList<>();
-        permute(cities, 0, result);
-        return result;
+    public static List<String> solveTSPTW_BruteForceParallel(Graph graph, String start) {
+        TimeWindowReduction reduction = graph.getReduction(start);
+        if (reduction == null || reduction.isInfeasible()) {
+            return null; // Unknown start city or no feasible tour
+        }
+        CompactGraph reduced = reduction.getGraph();
+        return reduced.toCityNames(solveTSPTW_BruteForceParallel(reduced, reduced.indexOf(start),
+                ForkJoinPool.commonPool()));
     }
 
     /**
-     * Helper method to generate permutations recursively.
+     * Solves the TSPTW problem exactly on a fork-join pool. The search tree is split on fixed prefixes,
+     * and the tasks share the best known cost so an improvement in one task prunes all the others.
+     * The returned tour is the same one {@link #solveTSPTW_BruteForce(CompactGraph, int)} returns.
      *
-     * @param cities The list of city names.
-     * @param start  The starting index for permutation.
-     * @param result The list to store all permutations.
+     * @param graph The compact graph containing cities and connections.
+     * @param start The starting city id.
+     * @param pool  The pool to run the search on.
+     * @return The optimal tour as city ids, or null if no valid tour exists.
      */
-    private static void permute(List<String> cities, int start, List<List<String>> result) {
-        if (start == cities.size()) {
-            result.add(new ArrayList<>(cities));
-            return;
+    public static int[] solveTSPTW_BruteForceParallel(CompactGraph graph, int start, ForkJoinPool pool) {
+        int n = graph.size();
+        int[] tour = new int[n + 1];
+        tour[0] = start;
+        tour[n] = start;
+        int position = 1;
+        for (int city = 0; city < n; city++) {
+            if (city != start) {
+                tour[position++] = city;
+            }
+        }
+
+        // Fix prefixes until there are enough tasks to keep every worker busy after pruning
+        int splitDepth = 1;
+        long tasks = 1;
+        while (splitDepth < n - 1 && tasks < (long) pool.getParallelism() * TASKS_PER_WORKER) {
+            tasks *= n - splitDepth;
+            splitDepth++;
+        }
+
+        AtomicLong sharedBest = new AtomicLong(Long.MAX_VALUE);
+        Result result = pool.invoke(new PrefixTask(graph, tour, 1, start, 0, 0, splitDepth, sharedBest));
+        return result == null ? null : result.tour;
+    }
+
+    // Number of prefix tasks created per worker thread, more tasks balance pruned subtrees better
+    private static final int TASKS_PER_WORKER = 16;
+
+    /**
+     * Depth-first enumeration of the tours in place. Arrival time and cost are carried along the prefix,
+     * so each permutation costs O(1) per city instead of a full re-evaluation, and memory stays O(n).
+     * Prefixes are cut as soon as they break a latest time window or cost more than the best tour so far.
+     * Permutations are visited in the same order as a full enumeration, so ties resolve the same way.
+     */
+    private static class Search {
+        // Prefixes extended between two polls of the control
+        private static final int POLL_INTERVAL = 1 << 12;
+
+        private final CompactGraph graph;
+        private final int[] tour; // start, the permuted cities, start
+        private final AtomicLong sharedBest; // Best {cost, time} of all parallel searches, null when sequential
+        private final SolverControl control; // Null when the search always finishes
+        private int[] optimalTour;
+        private int optimalCost = Integer.MAX_VALUE;
+        private int optimalTime = Integer.MAX_VALUE;
+        private int untilPoll = POLL_INTERVAL;
+        private boolean stopped;
+
+        private Search(CompactGraph graph, int[] tour, AtomicLong sharedBest, SolverControl control) {
+            this.graph = graph;
+            this.tour = tour;
+            this.sharedBest = sharedBest;
+            this.control = control;
+        }
+
+        /**
+         * Tries every remaining city at the given depth.
+         *
+         * @param depth       The position in the tour to fill, tour[1..depth-1] is the fixed prefix.
+         * @param currentCity The last city of the prefix.
+         * @param currentTime The time we leave the last city of the prefix.
+         * @param currentCost The distance travelled along the prefix.
+         */
+        private void extend(int depth, int currentCity, int currentTime, int currentCost) {
+            if (control != null && (stopped || (--untilPoll == 0 && isStopped()))) {
+                return; // Unwind with the best tour so far
+            }
+            int last = tour.length - 1;
+            if (depth == last) {
+                close(currentCity, currentTime, currentCost);
+                return;
+            }
+
+            // Every remaining city is reached after the current time, so a passed deadline kills the prefix
+            for (int i = depth; i < last; i++) {
+                if (graph.latest(tour[i]) < currentTime) {
+                    return;
+                }
+            }
+
+            for (int i = depth; i < last; i++) {
+                swap(depth, i);
+                int city = tour[depth];
+                int arrivalTime = graph.getValidArrivalTime(currentCity, city, currentTime);
+                if (arrivalTime != -1) {
+                    int cost = currentCost + graph.distance(currentCity, city);
+                    // Equal cost is kept, it can still win on time
+                    if (cost <= bound()) {
+                        extend(depth + 1, city, arrivalTime, cost);
+                    }
+                }
+                swap(depth, i);
+            }
+        }
+
+        // Returns to the start city and records the tour if it beats the best one
+        private void close(int currentCity, int currentTime, int currentCost) {
+            int start = tour[0];
+            int time = graph.getValidArrivalTime(currentCity, start, currentTime);
+            if (time == -1) {
+                return; // Skip invalid paths
+            }
+            int cost = currentCost + graph.distance(currentCity, start);
+
+            // Update the optimal tour if it's better
+            if (cost < optimalCost || (cost == optimalCost && time < optimalTime)) {
+                optimalCost = cost;
+                optimalTime = time;
+                optimalTour = tour.clone();
+                if (sharedBest != null) {
+                    sharedBest.accumulateAndGet(pack(cost, time), Math::min);
+                }
+            }
+        }
+
+        private boolean isStopped() {
+            untilPoll = POLL_INTERVAL;
+            stopped = control.shouldStop();
+            return stopped;
         }
 
-        for (int i = start; i < cities.size(); i++) {
-            Collections.swap(cities, start, i);
-            permute(cities, start + 1, result);
-            Collections.swap(cities, start, i);
+        // Highest prefix cost that can still lead to a best tour
+        private int bound() {
+            if (sharedBest == null) {
+                return optimalCost;
+            }
+            return Math.min(optimalCost, (int) (sharedBest.get() >>> 32));
         }
+
+        private void swap(int i, int j) {
+            int temp = tour[i];
+            tour[i] = tour[j];
+            tour[j] = temp;
+        }
+    }
+
+    // Orders {cost, time} pairs as a single long, so the shared incumbent is one atomic minimum
+    private static long pack(int cost, int time) {
+        return ((long) cost << 32) | time;
     }
 
+    // Best tour of a subtree with its cost and time
+    private static class Result {
+        private final int[] tour;
+        private final int cost;
+        private final int time;
+
+        private Result(int[] tour, int cost, int time) {
+            this.tour = tour;
+            this.cost = cost;
+            this.time = time;
+        }
+
+        private boolean isBetterThan(Result other) {
+            return other == null || cost < other.cost || (cost == other.cost && time < other.time);
+        }
+    }
+
+    /**
+     * Searches every tour that starts with a fixed prefix. Near the root the task forks one child per
+     * next city, deeper down it enumerates its subtree sequentially. Children are joined in enumeration
+     * order and only replaced by strictly better results, so the answer matches the sequential search.
+     */
+    private static class PrefixTask extends RecursiveTask<Result> {
+        private final CompactGraph graph;
+        private final int[] tour; // Own copy, tour[1..depth-1] is the fixed prefix
+        private final int depth;
+        private final int currentCity;
+        private final int currentTime;
+        private final int currentCost;
+        private final int splitDepth;
+        private final AtomicLong sharedBest;
+
+        private PrefixTask(CompactGraph graph, int[] tour, int depth, int currentCity, int currentTime,
+                           int currentCost, int splitDepth, AtomicLong sharedBest) {
+            this.graph = graph;
+            this.tour = tour;
+            this.depth = depth;
+            this.currentCity = currentCity;
+            this.currentTime = currentTime;
+            this.currentCost = currentCost;
+            this.splitDepth = splitDepth;
+            this.sharedBest = sharedBest;
+        }
+
+        @Override
+        protected Result compute() {
+            int last = tour.length - 1;
+
+            // Deep enough, enumerate the rest of the subtree on this thread
+            if (depth >= splitDepth || depth == last) {
+                Search search = new Search(graph, tour, sharedBest, null);
+                search.extend(depth, currentCity, currentTime, currentCost);
+                if (search.optimalTour == null) {
+                    return null;
+                }
+                return new Result(search.optimalTour, search.optimalCost, search.optimalTime);
+            }
+
+            for (int i = depth; i < last; i++) {
+                if (graph.latest(tour[i]) < currentTime) {
+                    return null; // A remaining city can no longer be reached in time
+                }
+            }
+
+            // Fork one task per feasible next city
+            List<PrefixTask> children = new ArrayList<>();
+            for (int i = depth; i < last; i++) {
+                int[] childTour = tour.clone();
+                childTour[depth] = tour[i];
+                childTour[i] = tour[depth];
+                int city = childTour[depth];
+
+                int arrivalTime = graph.getValidArrivalTime(currentCity, city, currentTime);
+                if (arrivalTime == -1) continue;
+                int cost = currentCost + graph.distance(currentCity, city);
+                if (cost > (int) (sharedBest.get() >>> 32)) continue;
+
+                children.add(new PrefixTask(graph, childTour, depth + 1, city, arrivalTime, cost, splitDepth, sharedBest));
+            }
+            invokeAll(children);
+
+            Result best = null;
+            for (PrefixTask child : children) {
+                Result result = child.join();
+                if (result != null && result.isBetterThan(best)) {
+                    best = result;
+                }
+            }
+            return best;
+        }
+    }
 
 }
@@ -0,0 +1,98 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-city neighbor lists sorted by distance, stored in compressed rows of primitive arrays.
+ * The neighbors of city i are entries offsets[i] .. offsets[i + 1] - 1, nearest first and by city id
+ * on equal distance. City ids follow the order of {@link Graph#getAllCities()}.
+ * Instances are built and cached by {@link Graph#getCandidateLists()}.
+ */
+public class CandidateLists {
+
+    private final String[] names; // City names indexed by id
+    private final Map<String, Integer> ids;
+    private final int[] earliest;
+    private final int[] latest;
+    private final int[] offsets; // Row start of every city, offsets[n] is the number of entries
+    private final int[] targets;
+    private final int[] distances;
+    private final int[] travelTimes;
+
+    CandidateLists(String[] names, int[] earliest, int[] latest, int[] offsets, int[] targets, int[] distances,
+                   int[] travelTimes) {
+        this.names = names;
+        this.earliest = earliest;
+        this.latest = latest;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.distances = distances;
+        this.travelTimes = travelTimes;
+        this.ids = new HashMap<>(names.length * 2);
+        for (int i = 0; i < names.length; i++) {
+            ids.put(names[i], i);
+        }
+    }
+
+    /**
+     * @return the number of cities
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * @return the id of the city, or -1 if the city does not exist
+     */
+    public int indexOf(String name) {
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    public String getName(int city) {
+        return names[city];
+    }
+
+    public int earliest(int city) {
+        return earliest[city];
+    }
+
+    public int latest(int city) {
+        return latest[city];
+    }
+
+    /**
+     * @return the index of the first neighbor entry of the city
+     */
+    public int from(int city) {
+        return offsets[city];
+    }
+
+    /**
+     * @return one past the index of the last neighbor entry of the city
+     */
+    public int to(int city) {
+        return offsets[city + 1];
+    }
+
+    public int target(int entry) {
+        return targets[entry];
+    }
+
+    public int distance(int entry) {
+        return distances[entry];
+    }
+
+    public int travelTime(int entry) {
+        return travelTimes[entry];
+    }
+
+    /**
+     * @return the entry of the edge between two cities, or -1 if they are not connected
+     */
+    public int findEntry(int from, int to) {
+        for (int entry = offsets[from]; entry < offsets[from + 1]; entry++) {
+            if (targets[entry] == to) return entry;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,414 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable, integer-indexed snapshot of a {@link Graph}.
+ * Cities are mapped to dense ids 0..n-1 and all arc data is read through {@link ArcMatrix} views, flat
+ * primitive arrays on the heap or a memory-mapped {@link InstanceFile}, so solvers can run on int tours
+ * without hashing city names in their inner loops.
+ */
+public class CompactGraph {
+
+    // Value stored in the distance and travel time matrices when two cities are not connected
+    public static final int NO_EDGE = -1;
+
+    private final String[] names; // City names indexed by id
+    private final Map<String, Integer> ids; // City name to id, only used at the API boundary
+    private final ArcMatrix distance;
+    private final ArcMatrix travelTime;
+    private final ArcReader distanceReader; // Reads distance without an interface call
+    private final ArcReader travelTimeReader;
+    private final int[] earliest; // Earliest visiting time per city
+    private final int[] latest; // Latest visiting time per city
+    private final Map<Integer, TimeWindowReduction> reductions = new ConcurrentHashMap<>(); // By start city
+
+    /**
+     * Creates a compact graph from already flattened arrays. The arrays are owned by the new instance;
+     * a symmetric matrix is packed into a {@link PackedSymmetricMatrix} and the array is dropped.
+     *
+     * @param names      City names indexed by id.
+     * @param distance   Row-major n*n distance matrix, {@link #NO_EDGE} for missing edges.
+     * @param travelTime Row-major n*n travel time matrix, {@link #NO_EDGE} for missing edges.
+     * @param earliest   Earliest visiting time per city.
+     * @param latest     Latest visiting time per city.
+     */
+    CompactGraph(String[] names, int[] distance, int[] travelTime, int[] earliest, int[] latest) {
+        this(names, PackedSymmetricMatrix.of(names.length, distance), PackedSymmetricMatrix.of(names.length, travelTime),
+                earliest, latest);
+    }
+
+    /**
+     * Creates a compact graph whose arcs are read through matrix views, for instances that are not on the heap.
+     *
+     * @param names      City names indexed by id.
+     * @param distance   Distance matrix, {@link #NO_EDGE} for missing edges.
+     * @param travelTime Travel time matrix, {@link #NO_EDGE} for missing edges.
+     * @param earliest   Earliest visiting time per city, owned by the new instance.
+     * @param latest     Latest visiting time per city, owned by the new instance.
+     */
+    CompactGraph(String[] names, ArcMatrix distance, ArcMatrix travelTime, int[] earliest, int[] latest) {
+        int n = names.length;
+        if (distance.size() != n || travelTime.size() != n || earliest.length != n || latest.length != n) {
+            throw new IllegalArgumentException("Array sizes do not match the number of cities.");
+        }
+        this.names = names;
+        this.distance = distance;
+        this.travelTime = travelTime;
+        this.distanceReader = new ArcReader(distance);
+        this.travelTimeReader = new ArcReader(travelTime);
+        this.earliest = earliest;
+        this.latest = latest;
+        this.ids = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) {
+            if (ids.put(names[i], i) != null) {
+                throw new IllegalArgumentException("Duplicate city name: " + names[i]);
+            }
+        }
+    }
+
+    /**
+     * Builds a compact graph straight from city arrays and full matrices, without a {@link Graph} and its
+     * per-edge objects. Everything is validated in one pass over the matrices, then each matrix is packed
+     * into a {@link PackedSymmetricMatrix} if it is symmetric or copied row-major if it is not.
+     * The arguments are copied, the caller keeps ownership of them.
+     *
+     * @param names         City names indexed by id, unique.
+     * @param earliestTimes Earliest visiting time per city.
+     * @param latestTimes   Latest visiting time per city.
+     * @param distances     distances[from][to], {@link #NO_EDGE} where there is no arc. The diagonal is ignored.
+     * @param travelTimes   Travel times in the same form, with an arc exactly where distances has one.
+     * @return the compact graph
+     * @throws IllegalArgumentException if the sizes do not match, a name repeats, a window is empty, a value is
+     *                                  negative, the two matrices disagree on an arc, or there are too many
+     *                                  cities for a matrix to fit in an array
+     */
+    public static CompactGraph fromMatrices(String[] names, int[] earliestTimes, int[] latestTimes,
+                                            int[][] distances, int[][] travelTimes) {
+        int n = names.length;
+        if (earliestTimes.length != n || latestTimes.length != n || distances.length != n || travelTimes.length != n) {
+            throw new IllegalArgumentException("Array sizes do not match the number of cities.");
+        }
+        for (int from = 0; from < n; from++) {
+            if (earliestTimes[from] > latestTimes[from]) {
+                throw new IllegalArgumentException("Earliest time cannot be greater than latest time: " + names[from]);
+            }
+            int[] distanceRow = distances[from];
+            int[] travelTimeRow = travelTimes[from];
+            if (distanceRow.length != n || travelTimeRow.length != n) {
+                throw new IllegalArgumentException("Matrix rows do not match the number of cities.");
+            }
+            for (int to = 0; to < n; to++) {
+                if (to == from) continue;
+                int distance = distanceRow[to];
+                int travelTime = travelTimeRow[to];
+                if ((distance == NO_EDGE) != (travelTime == NO_EDGE) || distance < NO_EDGE || travelTime < NO_EDGE) {
+                    throw new IllegalArgumentException("Invalid arc from " + names[from] + " to " + names[to]
+                            + ": distance " + distance + ", travel time " + travelTime);
+                }
+            }
+        }
+        return new CompactGraph(names.clone(), PackedSymmetricMatrix.of(distances), PackedSymmetricMatrix.of(travelTimes),
+                earliestTimes.clone(), latestTimes.clone());
+    }
+
+    // --------- Get Methods -------------
+
+    /**
+     * @return the number of cities in the graph
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * @param city city id
+     * @return the name of the city
+     */
+    public String getName(int city) {
+        return names[city];
+    }
+
+    /**
+     * @param name city name
+     * @return the id of the city, or -1 if the city does not exist
+     */
+    public int indexOf(String name) {
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return the distance between two cities, or {@link #NO_EDGE} if they are not connected
+     */
+    public int distance(int from, int to) {
+        return distanceReader.get(from, to);
+    }
+
+    /**
+     * @return the travel time between two cities, or {@link #NO_EDGE} if they are not connected
+     */
+    public int travelTime(int from, int to) {
+        return travelTimeReader.get(from, to);
+    }
+
+    /**
+     * @return true if an edge exists between the two cities
+     */
+    public boolean hasEdge(int from, int to) {
+        return travelTimeReader.get(from, to) != NO_EDGE;
+    }
+
+    /**
+     * @return the read-only distance matrix
+     */
+    public ArcMatrix getDistanceMatrix() {
+        return distance;
+    }
+
+    /**
+     * @return the read-only travel time matrix
+     */
+    public ArcMatrix getTravelTimeMatrix() {
+        return travelTime;
+    }
+
+    public int earliest(int city) {
+        return earliest[city];
+    }
+
+    public int latest(int city) {
+        return latest[city];
+    }
+
+    /**
+     * Same rule as {@link Graph#getValidArrivalTime}: travel to the next city and wait for its window to open.
+     *
+     * @param from        city id we leave from
+     * @param to          city id we travel to
+     * @param currentTime the time we leave the current city
+     * @return the arrival time at the next city, or -1 if the edge is missing or the latest time is exceeded
+     */
+    public int getValidArrivalTime(int from, int to, int currentTime) {
+        int time = travelTimeReader.get(from, to);
+        if (time == NO_EDGE) {
+            return -1;
+        }
+        int arrivalTime = currentTime + time;
+        if (arrivalTime > latest[to]) {
+            return -1;
+        }
+        return Math.max(arrivalTime, earliest[to]);
+    }
+
+    // --------- Utility Methods ---------
+
+    /**
+     * Calculates the total feasible path cost for a tour of city ids,
+     * using the same rules as {@link Graph#calculateFeasiblePathCost(List)}.
+     *
+     * @param tour city ids in visiting order
+     * @return {cost, time} of the tour, or null if the tour is not feasible
+     */
+    public int[] calculateFeasiblePathCost(int[] tour) {
+        int totalCost = 0;
+        int currentTime = 0;
+
+        for (int i = 0; i < tour.length - 1; i++) {
+            int time = travelTimeReader.get(tour[i], tour[i + 1]);
+            if (time == NO_EDGE) {
+                return null; // Invalid edge
+            }
+            int arrivalTime = currentTime + time;
+            if (arrivalTime > latest[tour[i + 1]]) {
+                return null; // Latest time window violated
+            }
+            currentTime = Math.max(arrivalTime, earliest[tour[i + 1]]);
+            totalCost += distanceReader.get(tour[i], tour[i + 1]);
+        }
+        return new int[]{totalCost, currentTime};
+    }
+
+    /**
+     * Cost of a tour that may break the rules, for search methods that need to rank infeasible tours.
+     * A late arrival adds its lateness times latenessPenalty and the tour goes on from the late time,
+     * a missing edge adds missingEdgePenalty and takes no time. Feasible tours score their plain cost.
+     *
+     * @param tour               city ids in visiting order
+     * @param latenessPenalty    cost of one time unit past a city's latest time
+     * @param missingEdgePenalty cost of using an edge that does not exist
+     * @return the cost plus the penalties
+     */
+    public long calculatePenalizedPathCost(int[] tour, int latenessPenalty, int missingEdgePenalty) {
+        long totalCost = 0;
+        long currentTime = 0;
+
+        for (int i = 0; i < tour.length - 1; i++) {
+            int next = tour[i + 1];
+            int time = travelTimeReader.get(tour[i], next);
+            if (time == NO_EDGE) {
+                totalCost += missingEdgePenalty;
+            } else {
+                currentTime += time;
+                totalCost += distanceReader.get(tour[i], next);
+            }
+            if (currentTime > latest[next]) {
+                totalCost += (currentTime - latest[next]) * latenessPenalty;
+            }
+            currentTime = Math.max(currentTime, earliest[next]);
+        }
+        return totalCost;
+    }
+
+    /**
+     * Builds a graph with one more city, which gets id {@link #size()}. The matrices are not copied: the new
+     * graph reads them through an {@link AppendedArcMatrix} that adds the new city's arcs, so growing a graph
+     * costs O(n) per city instead of O(n^2), and far less than building the snapshot again from a {@link Graph}.
+     *
+     * @param name           Name of the new city.
+     * @param earliest       Earliest visiting time of the new city.
+     * @param latest         Latest visiting time of the new city.
+     * @param distanceTo     Distance from every existing city to the new one, {@link #NO_EDGE} if not connected.
+     * @param travelTimeTo   Travel time from every existing city to the new one.
+     * @param distanceFrom   Distance from the new city to every existing one.
+     * @param travelTimeFrom Travel time from the new city to every existing one.
+     * @return the larger graph, it owns the arrays
+     * @throws IllegalArgumentException if the city already exists or an array does not cover every city
+     */
+    public CompactGraph withCity(String name, int earliest, int latest, int[] distanceTo, int[] travelTimeTo,
+                                 int[] distanceFrom, int[] travelTimeFrom) {
+        int n = names.length;
+        if (ids.containsKey(name)) {
+            throw new IllegalArgumentException("City already exists: " + name);
+        }
+        String[] newNames = Arrays.copyOf(names, n + 1);
+        newNames[n] = name;
+        int[] newEarliest = Arrays.copyOf(this.earliest, n + 1);
+        newEarliest[n] = earliest;
+        int[] newLatest = Arrays.copyOf(this.latest, n + 1);
+        newLatest[n] = latest;
+        return new CompactGraph(newNames, AppendedArcMatrix.append(distance, distanceTo, distanceFrom),
+                AppendedArcMatrix.append(travelTime, travelTimeTo, travelTimeFrom), newEarliest, newLatest);
+    }
+
+    /**
+     * Reduces this graph with {@link TimeWindowReduction} for tours from the given start city, once per start
+     * city: the solvers of a portfolio racing on this graph share one reduction, and the ones that ask while
+     * it is being computed wait for it. A reduction stopped by the control is handed to the callers waiting
+     * for it but not kept, so a later solve with more time reduces again.
+     *
+     * @param startCity The starting city id.
+     * @param control   Deadline and cancellation of the solve that asks.
+     * @return the reduction of this graph
+     * @throws IllegalArgumentException if there are more than {@link TimeWindowReduction#MAX_CITIES} cities
+     */
+    public TimeWindowReduction getReduction(int startCity, SolverControl control) {
+        TimeWindowReduction reduction = reductions.computeIfAbsent(startCity,
+                city -> TimeWindowReduction.reduce(this, city, control));
+        if (reduction.isStopped()) {
+            reductions.remove(startCity, reduction);
+        }
+        return reduction;
+    }
+
+    /**
+     * Converts a tour of city ids back to city names.
+     *
+     * @param tour city ids, may be null
+     * @return the tour as city names, or null if the tour is null
+     */
+    public List<String> toCityNames(int[] tour) {
+        if (tour == null) {
+            return null;
+        }
+        List<String> path = new ArrayList<>(tour.length);
+        for (int city : tour) {
+            path.add(names[city]);
+        }
+        return path;
+    }
+
+    /**
+     * Converts a tour of city names to city ids.
+     *
+     * @param path city names in visiting order
+     * @return the tour as city ids
+     * @throws IllegalArgumentException if a city is not part of the graph
+     */
+    public int[] toTour(List<String> path) {
+        int[] tour = new int[path.size()];
+        for (int i = 0; i < tour.length; i++) {
+            tour[i] = indexOf(path.get(i));
+            if (tour[i] == -1) {
+                throw new IllegalArgumentException("Unknown city: " + path.get(i));
+            }
+        }
+        return tour;
+    }
+
+    // --------- Nested Classes ---------
+
+    /**
+     * Reads one {@link ArcMatrix} without calling it. Solvers run on graphs of every matrix type, so a call
+     * to {@link ArcMatrix#get} in {@link #distance} or {@link #travelTime} is megamorphic and never inlined.
+     * This class is final and switches on the kind of matrix it was made for, so those call sites stay
+     * monomorphic and the heap matrices are read with plain array loads. Mapped and computed matrices
+     * still go through the interface.
+     */
+    private static final class ArcReader {
+        private static final int BYTE_TRIANGLE = 0;
+        private static final int CHAR_TRIANGLE = 1;
+        private static final int INT_TRIANGLE = 2;
+        private static final int ROW_MAJOR = 3;
+        private static final int OTHER = 4;
+
+        private final int kind;
+        private final int size;
+        private final int[] rowOffset; // Of a triangle, see PackedSymmetricMatrix
+        private final byte[] bytes;
+        private final char[] chars;
+        private final int[] ints; // Triangle values plus one, or row-major values
+        private final ArcMatrix matrix;
+
+        private ArcReader(ArcMatrix matrix) {
+            this.matrix = matrix;
+            this.size = matrix.size();
+            this.rowOffset = matrix instanceof PackedSymmetricMatrix packed ? packed.rowOffset : null;
+            byte[] bytes = null;
+            char[] chars = null;
+            int[] ints = null;
+            if (matrix instanceof PackedSymmetricMatrix.ByteMatrix byteMatrix) {
+                kind = BYTE_TRIANGLE;
+                bytes = byteMatrix.values;
+            } else if (matrix instanceof PackedSymmetricMatrix.CharMatrix charMatrix) {
+                kind = CHAR_TRIANGLE;
+                chars = charMatrix.values;
+            } else if (matrix instanceof PackedSymmetricMatrix.IntMatrix intMatrix) {
+                kind = INT_TRIANGLE;
+                ints = intMatrix.values;
+            } else if (matrix instanceof ArrayArcMatrix arrayMatrix) {
+                kind = ROW_MAJOR;
+                ints = arrayMatrix.values;
+            } else {
+                kind = OTHER;
+            }
+            this.bytes = bytes;
+            this.chars = chars;
+            this.ints = ints;
+        }
+
+        private int get(int from, int to) {
+            switch (kind) {
+                case BYTE_TRIANGLE:
+                    return (bytes[rowOffset[Math.min(from, to)] + Math.max(from, to)] & 0xFF) - 1;
+                case CHAR_TRIANGLE:
+                    return chars[rowOffset[Math.min(from, to)] + Math.max(from, to)] - 1;
+                case INT_TRIANGLE:
+                    return ints[rowOffset[Math.min(from, to)] + Math.max(from, to)] - 1;
+                case ROW_MAJOR:
+                    return ints[from * size + to];
+                default:
+                    return matrix.get(from, to);
+            }
+        }
+    }
+}
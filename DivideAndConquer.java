@@ -2,7 +2,39 @@ import java.util.*;
 
 public class DivideAndConquer {
 
+    /**
+     * Divide and conquer over the given cities. Up to {@link TimeWindowReduction#MAX_CITIES} cities it runs
+     * on the graph reduced for tours from the start city, whose reduction stays cached on the graph with what
+     * it removed, so merged paths never use an arc that no feasible tour can use. Larger graphs are searched
+     * directly.
+     *
+     * @param graph     The graph object containing cities and connections.
+     * @param cities    City names to visit.
+     * @param startCity The starting city name.
+     * @return The path as a list of city names, or null if the merged path is not feasible.
+     */
     public static List<String> solveTSPTW_DivideAndConquer(Graph graph, List<String> cities, String startCity) {
+        if (graph.getNumberOfCities() > TimeWindowReduction.MAX_CITIES) {
+            return divideAndConquer(graph, cities, startCity);
+        }
+
+        TimeWindowReduction reduction = graph.getReduction(startCity);
+        if (reduction == null || reduction.isInfeasible()) {
+            return null; // Unknown start city or no feasible tour
+        }
+        CompactGraph reduced = reduction.getGraph();
+        int[] ids = new int[cities.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = reduced.indexOf(cities.get(i));
+            if (ids[i] == -1) {
+                return null; // Unknown city
+            }
+        }
+        return reduced.toCityNames(solveTSPTW_DivideAndConquer(reduced, ids, reduced.indexOf(startCity)));
+    }
+
+    // The name based recursion, for graphs too large to reduce
+    private static List<String> divideAndConquer(Graph graph, List<String> cities, String startCity) {
         // Base case: Solve directly if small number of cities
         if (cities.size() <= 3) {
             return solveSmallTSP(graph, cities, startCity);
@@ -19,11 +51,11 @@ public class DivideAndConquer {
         }
 
         // Recursively solve for each subset
-        List<String> path1 = solveTSPTW_DivideAndConquer(graph, subset1, startCity);
+        List<String> path1 = divideAndConquer(graph, subset1, startCity);
         if (path1 == null) return null;
 
         String lastCityInPath1 = path1.getLast();
-        List<String> path2 = solveTSPTW_DivideAndConquer(graph, subset2, lastCityInPath1);
+        List<String> path2 = divideAndConquer(graph, subset2, lastCityInPath1);
         if (path2 == null) return null;
 
         // Merge paths and enforce returning to startCity
@@ -102,4 +134,179 @@ public class DivideAndConquer {
             Collections.swap(cities, start, i);
         }
     }
+
+    /**
+     * Divide and conquer on a compact graph, following the same steps as the name based version.
+     *
+     * @param graph     The compact graph.
+     * @param cities    City ids to visit.
+     * @param startCity The starting city id.
+     * @return The path as city ids, or null if the merged path is not feasible.
+     */
+    public static int[] solveTSPTW_DivideAndConquer(CompactGraph graph, int[] cities, int startCity) {
+        // Base case: Solve directly if small number of cities
+        if (cities.length <= 3) {
+            return solveSmallTSP(graph, cities, startCity);
+        }
+
+        // Divide the cities into two subsets
+        int mid = cities.length / 2;
+        int[] subset1 = distinct(Arrays.copyOfRange(cities, 0, mid));
+        int[] subset2 = distinct(Arrays.copyOfRange(cities, mid, cities.length));
+
+        // Ensure the starting city is included in the first subset
+        if (indexOf(subset1, startCity) == -1) {
+            subset1 = prepend(startCity, subset1);
+        }
+
+        // Recursively solve for each subset
+        int[] path1 = solveTSPTW_DivideAndConquer(graph, subset1, startCity);
+        if (path1 == null) return null;
+
+        int lastCityInPath1 = path1[path1.length - 1];
+        int[] path2 = solveTSPTW_DivideAndConquer(graph, subset2, lastCityInPath1);
+        if (path2 == null) return null;
+
+        // Merge paths and enforce returning to startCity
+        return mergePaths(graph, path1, path2, startCity);
+    }
+
+    private static int[] solveSmallTSP(CompactGraph graph, int[] cities, int startCity) {
+        int[] allCities = indexOf(cities, startCity) == -1 ? prepend(startCity, cities) : cities.clone();
+
+        // Only permutations that keep startCity in front are candidates, so permute the rest
+        int first = indexOf(allCities, startCity);
+        allCities[first] = allCities[0];
+        allCities[0] = startCity;
+
+        SmallSearch search = new SmallSearch(graph, startCity);
+        search.permute(allCities, 1);
+        return search.optimalPath;
+    }
+
+    private static int[] mergePaths(CompactGraph graph, int[] path1, int[] path2, int startCity) {
+        int[] mergedPath = Arrays.copyOf(path1, path1.length + path2.length + 1);
+        int size = path1.length;
+        boolean[] visited = new boolean[graph.size()];
+        for (int city : path1) visited[city] = true;
+        int lastCity = path1[path1.length - 1];
+
+        // Travel time along the merged path without waiting, as Graph.calculateArrivalTime computes it
+        int pathTravelTime = travelTimeWithoutWaiting(graph, path1);
+
+        for (int city : path2) {
+            if (!visited[city]) {
+                int travelTime = graph.travelTime(lastCity, city);
+                int departure = pathTravelTime == -1 ? -1 : pathTravelTime + travelTime;
+                int arrivalTime = arrivalWithTravelTime(graph, lastCity, city, departure);
+                if (arrivalTime == -1) return null;
+
+                if (pathTravelTime != -1) {
+                    pathTravelTime = travelTime == CompactGraph.NO_EDGE ? -1 : pathTravelTime + travelTime;
+                }
+                mergedPath[size++] = city;
+                visited[city] = true;
+                lastCity = city;
+            }
+        }
+
+        // Ensure returning to the startCity
+        if (graph.hasEdge(lastCity, startCity)) {
+            mergedPath[size++] = startCity;
+        } else {
+            return null;
+        }
+        return Arrays.copyOf(mergedPath, size);
+    }
+
+    // Sum of travel times along the path, or -1 if an edge is missing
+    private static int travelTimeWithoutWaiting(CompactGraph graph, int[] path) {
+        int currentTime = 0;
+        for (int i = 0; i < path.length - 1; i++) {
+            int travelTime = graph.travelTime(path[i], path[i + 1]);
+            if (travelTime == CompactGraph.NO_EDGE) return -1;
+            currentTime += travelTime;
+        }
+        return currentTime;
+    }
+
+    // Mirrors Graph.getValidArrivalTime, including its handling of missing edges
+    private static int arrivalWithTravelTime(CompactGraph graph, int from, int to, int arrivalTime) {
+        int totalTime = arrivalTime + graph.travelTime(from, to);
+        if (totalTime > graph.latest(to)) return -1;
+        return Math.max(totalTime, graph.earliest(to));
+    }
+
+    private static int[] distinct(int[] cities) {
+        int[] result = new int[cities.length];
+        int size = 0;
+        for (int city : cities) {
+            if (indexOf(result, size, city) == -1) {
+                result[size++] = city;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private static int[] prepend(int city, int[] cities) {
+        int[] result = new int[cities.length + 1];
+        result[0] = city;
+        System.arraycopy(cities, 0, result, 1, cities.length);
+        return result;
+    }
+
+    private static int indexOf(int[] cities, int city) {
+        return indexOf(cities, cities.length, city);
+    }
+
+    private static int indexOf(int[] cities, int size, int city) {
+        for (int i = 0; i < size; i++) {
+            if (cities[i] == city) return i;
+        }
+        return -1;
+    }
+
+    // Evaluates the small permutations in place instead of collecting them first
+    private static class SmallSearch {
+        private final CompactGraph graph;
+        private final int startCity;
+        private int[] optimalPath;
+        private int optimalCost = Integer.MAX_VALUE;
+
+        private SmallSearch(CompactGraph graph, int startCity) {
+            this.graph = graph;
+            this.startCity = startCity;
+        }
+
+        private void permute(int[] cities, int start) {
+            if (start >= cities.length) {
+                evaluate(cities);
+                return;
+            }
+
+            for (int i = start; i < cities.length; i++) {
+                swap(cities, start, i);
+                permute(cities, start + 1);
+                swap(cities, start, i);
+            }
+        }
+
+        private void evaluate(int[] perm) {
+            int last = perm[perm.length - 1];
+            // Closing the loop repeats startCity, and such permutations are skipped as duplicates
+            if (last != startCity && graph.hasEdge(last, startCity)) return;
+
+            int[] cost = graph.calculateFeasiblePathCost(perm);
+            if (cost != null && cost[0] < optimalCost) {
+                optimalCost = cost[0];
+                optimalPath = perm.clone();
+            }
+        }
+
+        private static void swap(int[] cities, int i, int j) {
+            int temp = cities[i];
+            cities[i] = cities[j];
+            cities[j] = temp;
+        }
+    }
 }
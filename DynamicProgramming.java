@@ -1,11 +1,66 @@
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class DynamicProgramming {
 
-    // Method to solve TSPTW using cost and travel time matrices
+    // Sparse state keys hold the mask above NODE_BITS bits of node index
+    private static final int NODE_BITS = 6;
+    private static final long NODE_MASK = (1L << NODE_BITS) - 1;
+    // 57 mask bits keep the keys non-negative, plus the start city that is never in a mask
+    private static final int MAX_SPARSE_CITIES = 58;
+    // Target masks handled by one parallel DP task
+    private static final int MASKS_PER_TASK = 256;
+    // Masks filled between two polls of the solver control, a power of two
+    private static final int MASKS_PER_POLL = 1 << 10;
+    // Most cities of the dense tables, one entry per (mask, city): about 40 MB of state heads at 20 cities,
+    // and every city more doubles it
+    public static final int MAX_DENSE_CITIES = 20;
+    // Most cities of the parallel DP, which keeps one layer of labels and a rank per mask: 64 MB of ranks at
+    // 25 cities, plus the state offsets of the widest layer, C(24, 12) * 24 ints or about 260 MB
+    public static final int MAX_PARALLEL_CITIES = 25;
+
+    /**
+     * Solves TSPTW on the matrices of {@link Graph#toAdjacencyMatrix()} and {@link Graph#toTravelTimeMatrix()},
+     * starting from node 0.
+     *
+     * @param costMatrix       Distance matrix, Integer.MAX_VALUE where two cities are not connected.
+     * @param travelTimeMatrix Travel time matrix, Integer.MAX_VALUE where two cities are not connected.
+     * @param timeWindows      Time window matrix, only columns 0 and 1 of every row are read.
+     * @return {minimum cost, total time}, or {-1, -1} if no feasible tour exists
+     * @deprecated The time window matrix takes O(n^2) memory for O(n) data, use
+     * {@link #solveTSPTW_DP(int[][], int[][], int[], int[])} with {@link Graph#toEarliestTimes()} and
+     * {@link Graph#toLatestTimes()}.
+     */
+    @Deprecated
     public static int[] solveTSPTW_DP(int[][] costMatrix, int[][] travelTimeMatrix, int[][] timeWindows) {
+        int n = costMatrix.length;
+        int[] earliest = new int[n];
+        int[] latest = new int[n];
+        for (int i = 0; i < n; i++) {
+            earliest[i] = timeWindows[i][0];
+            latest[i] = timeWindows[i][1];
+        }
+        return solveTSPTW_DP(costMatrix, travelTimeMatrix, earliest, latest);
+    }
+
+    /**
+     * Solves TSPTW on the matrices of {@link Graph#toAdjacencyMatrix()} and {@link Graph#toTravelTimeMatrix()}
+     * and the time windows of {@link Graph#toEarliestTimes()} and {@link Graph#toLatestTimes()},
+     * starting from node 0.
+     *
+     * @param costMatrix       Distance matrix, Integer.MAX_VALUE where two cities are not connected.
+     * @param travelTimeMatrix Travel time matrix, Integer.MAX_VALUE where two cities are not connected.
+     * @param earliest         Earliest visiting time per city.
+     * @param latest           Latest visiting time per city.
+     * @return {minimum cost, total time}, or {-1, -1} if no feasible tour exists
+     * @throws IllegalArgumentException if there are more than {@link #MAX_DENSE_CITIES} cities
+     */
+    public static int[] solveTSPTW_DP(int[][] costMatrix, int[][] travelTimeMatrix, int[] earliest, int[] latest) {
         int n = costMatrix.length;
         if (n == 0) return new int[]{-1, -1};
+        checkDenseSize(n);
 
         int fullMask = (1 << n) - 1;
 
@@ -37,10 +92,10 @@ public class DynamicProgramming {
                     int arrivalWithoutWait = arrivalTime[mask][i] + travelTime;
 
                     // Only add waiting time if arrivalWithoutWait is earlier than the earliest time window
-                    int newArrivalTime = Math.max(arrivalWithoutWait, timeWindows[j][0]);
+                    int newArrivalTime = Math.max(arrivalWithoutWait, earliest[j]);
 
                     // Check time window constraint
-                    if (newArrivalTime <= timeWindows[j][1]) {
+                    if (newArrivalTime <= latest[j]) {
                         int newCost = dp[mask][i] + costMatrix[i][j];
 
                         if (dp[mask][i] != Integer.MAX_VALUE && newCost < dp[newMask][j]) {
@@ -73,4 +128,727 @@ public class DynamicProgramming {
         return new int[]{minCost == Integer.MAX_VALUE ? -1 : minCost,
                 minTotalTime == Integer.MAX_VALUE ? -1 : minTotalTime};
     }
+
+    /**
+     * Solves TSPTW on a compact graph with the same recurrence as the matrix based version,
+     * starting from any city instead of node 0.
+     *
+     * @param graph     The compact graph.
+     * @param startCity The starting city id.
+     * @return {minimum cost, total time}, or {-1, -1} if no feasible tour exists
+     * @throws IllegalArgumentException if there are more than {@link #MAX_DENSE_CITIES} cities
+     */
+    public static int[] solveTSPTW_DP(CompactGraph graph, int startCity) {
+        int n = graph.size();
+        if (n == 0) return new int[]{-1, -1};
+        checkDenseSize(n);
+
+        int fullMask = (1 << n) - 1;
+
+        // dp[mask][i] -> Minimum cost to visit all nodes in 'mask' ending at node 'i'
+        int[][] dp = new int[1 << n][n];
+        int[][] arrivalTime = new int[1 << n][n]; // Tracks arrival time at each node
+
+        for (int[] row : dp) Arrays.fill(row, Integer.MAX_VALUE);
+        for (int[] row : arrivalTime) Arrays.fill(row, Integer.MAX_VALUE);
+
+        // Base case: start at the starting city at time 0
+        dp[1 << startCity][startCity] = 0;
+        arrivalTime[1 << startCity][startCity] = 0;
+
+        for (int mask = 1; mask <= fullMask; mask++) {
+            for (int i = 0; i < n; i++) {
+                if ((mask & (1 << i)) == 0 || dp[mask][i] == Integer.MAX_VALUE) continue; // Node 'i' not reached
+
+                for (int j = 0; j < n; j++) {
+                    if ((mask & (1 << j)) != 0) continue; // Node 'j' already visited
+
+                    int travelTime = graph.travelTime(i, j);
+                    if (travelTime == CompactGraph.NO_EDGE) continue; // Skip invalid paths
+
+                    // Only add waiting time if we arrive before the earliest time window
+                    int newArrivalTime = Math.max(arrivalTime[mask][i] + travelTime, graph.earliest(j));
+
+                    // Check time window constraint
+                    if (newArrivalTime <= graph.latest(j)) {
+                        int newMask = mask | (1 << j);
+                        int newCost = dp[mask][i] + graph.distance(i, j);
+
+                        if (newCost < dp[newMask][j]) {
+                            dp[newMask][j] = newCost;
+                            arrivalTime[newMask][j] = newArrivalTime;
+                        }
+                    }
+                }
+            }
+        }
+
+        int minCost = Integer.MAX_VALUE;
+        int minTotalTime = Integer.MAX_VALUE;
+
+        // Find minimum cost and corresponding time, closing the tour at the starting city
+        for (int i = 0; i < n; i++) {
+            if (i != startCity && dp[fullMask][i] != Integer.MAX_VALUE && graph.hasEdge(i, startCity)) {
+                int totalCost = dp[fullMask][i] + graph.distance(i, startCity);
+                int totalTime = arrivalTime[fullMask][i] + graph.travelTime(i, startCity);
+
+                if (totalCost < minCost) {
+                    minCost = totalCost;
+                    minTotalTime = totalTime;
+                }
+            }
+        }
+
+        return new int[]{minCost == Integer.MAX_VALUE ? -1 : minCost,
+                minTotalTime == Integer.MAX_VALUE ? -1 : minTotalTime};
+    }
+
+    /**
+     * Solves TSPTW exactly with the Pareto-label DP and returns the optimal tour.
+     *
+     * @param graph     The graph object containing cities and connections.
+     * @param startCity The starting city name.
+     * @return The optimal path as a list of city names, or null if no valid path exists.
+     * @throws IllegalArgumentException if there are more than {@link #MAX_DENSE_CITIES} cities
+     */
+    public static List<String> solveTSPTW_DP(Graph graph, String startCity) {
+        // Arcs and window slack that no feasible tour can use are removed before the search,
+        // the reduction stays cached on the graph with what it removed
+        TimeWindowReduction reduction = graph.getReduction(startCity);
+        if (reduction == null || reduction.isInfeasible()) {
+            return null; // Unknown start city or no feasible tour
+        }
+        CompactGraph reduced = reduction.getGraph();
+        return reduced.toCityNames(solveTSPTW_DPTour(reduced, reduced.indexOf(startCity)));
+    }
+
+    /**
+     * Exact label-setting DP. Instead of one (cost, time) pair per (mask, node) state it keeps every
+     * Pareto-optimal label, because a label with a higher cost but an earlier time can still be the only
+     * one that reaches the remaining cities inside their windows. Dominated labels are dropped on insert.
+     * The tour is evaluated with the same rules as {@link Graph#calculateFeasiblePathCost}, including the
+     * time window of the starting city on return.
+     *
+     * @param graph     The compact graph.
+     * @param startCity The starting city id.
+     * @return {minimum cost, total time}, or {-1, -1} if no feasible tour exists
+     * @throws IllegalArgumentException if there are more than {@link #MAX_DENSE_CITIES} cities
+     */
+    public static int[] solveTSPTW_ParetoDP(CompactGraph graph, int startCity) {
+        ParetoTable table = new ParetoTable(graph, startCity, null);
+        if (table.bestLabel == -1) return new int[]{-1, -1};
+        return new int[]{table.bestCost, table.bestTime};
+    }
+
+    /**
+     * Runs {@link #solveTSPTW_ParetoDP} and walks the labels back from the best final label to get the tour.
+     * Each label only remembers its predecessor city in one byte; the predecessor label is found again by
+     * matching cost and time in that city's state, so the path costs one extra byte per label.
+     *
+     * @param graph     The compact graph.
+     * @param startCity The starting city id.
+     * @return The optimal tour as city ids (starting and ending at startCity), or null if no feasible tour exists
+     * @throws IllegalArgumentException if there are more than {@link #MAX_DENSE_CITIES} cities
+     */
+    public static int[] solveTSPTW_DPTour(CompactGraph graph, int startCity) {
+        return solveTSPTW_DPTour(graph, startCity, null);
+    }
+
+    /**
+     * Same as {@link #solveTSPTW_DPTour(CompactGraph, int)}, giving up as soon as the control says to stop.
+     * A partial table holds no complete tour, so a stopped run returns null.
+     *
+     * @param control Deadline and cancellation of the run, or null to always finish.
+     * @throws IllegalArgumentException if there are more than {@link #MAX_DENSE_CITIES} cities
+     */
+    public static int[] solveTSPTW_DPTour(CompactGraph graph, int startCity, SolverControl control) {
+        ParetoTable table = new ParetoTable(graph, startCity, control);
+        if (table.bestLabel == -1) return null;
+        return table.reconstructTour();
+    }
+
+    /**
+     * Same labels and result as {@link #solveTSPTW_ParetoDP}, but only reachable (mask, node) states are stored.
+     * States are expanded layer by layer by subset size, each layer lives in a primitive hash map keyed by
+     * (mask, node), and a layer is dropped as soon as the next one is built. Labels that can no longer reach
+     * an unvisited city before its latest time are not kept, so tight windows leave very few states.
+     *
+     * @param graph     The compact graph.
+     * @param startCity The starting city id.
+     * @return {minimum cost, total time}, or {-1, -1} if no feasible tour exists
+     */
+    public static int[] solveTSPTW_SparseDP(CompactGraph graph, int startCity) {
+        int n = graph.size();
+        if (n < 2) return new int[]{-1, -1};
+        if (n > MAX_SPARSE_CITIES) {
+            throw new IllegalArgumentException("Too many cities for the sparse dynamic programming keys.");
+        }
+
+        int m = n - 1;
+        int[] cities = new int[m];
+        for (int city = 0, k = 0; city < n; city++) {
+            if (city != startCity) cities[k++] = city;
+        }
+        long fullMask = (1L << m) - 1;
+
+        // Layer 1: leave the start city at time 0 towards every other city
+        LongIntHashMap states = new LongIntHashMap(m);
+        LabelPool labels = new LabelPool();
+        for (int k = 0; k < m; k++) {
+            int arrival = graph.getValidArrivalTime(startCity, cities[k], 0);
+            if (arrival != -1 && !missesDeadline(graph, cities, fullMask & ~(1L << k), arrival)) {
+                states.put(stateKey(1L << k, k), labels.insert(-1, graph.distance(startCity, cities[k]), arrival));
+            }
+        }
+
+        for (int layer = 1; layer < m && states.size() > 0; layer++) {
+            LongIntHashMap nextStates = new LongIntHashMap(states.size() * 2);
+            LabelPool nextLabels = new LabelPool();
+
+            for (int slot = 0; slot < states.capacity(); slot++) {
+                if (!states.isUsed(slot)) continue;
+                long mask = states.keyAt(slot) >>> NODE_BITS;
+                int i = (int) (states.keyAt(slot) & NODE_MASK);
+                int head = states.valueAt(slot);
+
+                for (int j = 0; j < m; j++) {
+                    if ((mask & (1L << j)) != 0) continue; // Node 'j' already visited
+
+                    int travelTime = graph.travelTime(cities[i], cities[j]);
+                    if (travelTime == CompactGraph.NO_EDGE) continue; // Skip invalid paths
+                    int distance = graph.distance(cities[i], cities[j]);
+                    long newMask = mask | (1L << j);
+                    long key = stateKey(newMask, j);
+
+                    for (int label = head; label != -1; label = labels.next[label]) {
+                        int arrival = labels.time[label] + travelTime;
+                        if (arrival > graph.latest(cities[j])) continue; // Latest time window violated
+
+                        int newTime = Math.max(arrival, graph.earliest(cities[j]));
+                        if (missesDeadline(graph, cities, fullMask & ~newMask, newTime)) continue;
+
+                        int target = nextStates.get(key, -1);
+                        int newHead = nextLabels.insert(target, labels.cost[label] + distance, newTime);
+                        if (newHead != target) nextStates.put(key, newHead);
+                    }
+                }
+            }
+
+            // The finished layer is no longer referenced and can be collected
+            states = nextStates;
+            labels = nextLabels;
+        }
+
+        // Close the tour at the starting city and keep the cheapest, then earliest, result
+        int minCost = Integer.MAX_VALUE;
+        int minTotalTime = Integer.MAX_VALUE;
+        for (int i = 0; i < m; i++) {
+            int travelTime = graph.travelTime(cities[i], startCity);
+            if (travelTime == CompactGraph.NO_EDGE) continue;
+
+            for (int label = states.get(stateKey(fullMask, i), -1); label != -1; label = labels.next[label]) {
+                int arrival = labels.time[label] + travelTime;
+                if (arrival > graph.latest(startCity)) continue;
+
+                int totalCost = labels.cost[label] + graph.distance(cities[i], startCity);
+                int totalTime = Math.max(arrival, graph.earliest(startCity));
+                if (totalCost < minCost || (totalCost == minCost && totalTime < minTotalTime)) {
+                    minCost = totalCost;
+                    minTotalTime = totalTime;
+                }
+            }
+        }
+
+        if (minCost == Integer.MAX_VALUE) return new int[]{-1, -1};
+        return new int[]{minCost, minTotalTime};
+    }
+
+    /**
+     * Parallel version of {@link #solveTSPTW_ParetoDP} on the common fork-join pool.
+     *
+     * @param graph     The compact graph.
+     * @param startCity The starting city id.
+     * @return {minimum cost, total time}, or {-1, -1} if no feasible tour exists
+     * @throws IllegalArgumentException if there are more than {@link #MAX_PARALLEL_CITIES} cities
+     */
+    public static int[] solveTSPTW_ParallelDP(CompactGraph graph, int startCity) {
+        return solveTSPTW_ParallelDP(graph, startCity, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parallel version of {@link #solveTSPTW_ParetoDP}. Masks are processed layer by layer by popcount, and
+     * every state of layer k+1 only reads labels of layer k. Each task owns a range of target masks and pulls
+     * their labels from the previous layer, so tasks never write to the same state and need no locks.
+     * Each state ends with the same Pareto set as in the sequential DP, so the result is identical.
+     *
+     * @param graph     The compact graph.
+     * @param startCity The starting city id.
+     * @param pool      The pool the layers are processed on.
+     * @return {minimum cost, total time}, or {-1, -1} if no feasible tour exists
+     * @throws IllegalArgumentException if there are more than {@link #MAX_PARALLEL_CITIES} cities
+     */
+    public static int[] solveTSPTW_ParallelDP(CompactGraph graph, int startCity, ForkJoinPool pool) {
+        int n = graph.size();
+        if (n < 2) return new int[]{-1, -1};
+        // No (mask, city) table is built, only the ranks and one layer, so the dense cap does not apply
+        if (n > MAX_PARALLEL_CITIES) {
+            throw new IllegalArgumentException("Too many cities for the parallel dynamic programming: " + n
+                    + ", at most " + MAX_PARALLEL_CITIES + ".");
+        }
+
+        int m = n - 1;
+        int[] cities = new int[m];
+        for (int city = 0, k = 0; city < n; city++) {
+            if (city != startCity) cities[k++] = city;
+        }
+        int[] rank = new int[1 << m]; // Position of each mask inside its layer
+
+        // Layer 1: leave the start city at time 0 towards every other city
+        int[] masks = new int[m];
+        for (int k = 0; k < m; k++) {
+            masks[k] = 1 << k;
+            rank[masks[k]] = k;
+        }
+        LabelBlock layer = new LabelBlock(Math.multiplyExact(m, m));
+        for (int k = 0; k < m; k++) {
+            for (int j = 0; j < m; j++) {
+                layer.first[k * m + j] = layer.size;
+                if (j != k) continue; // Only (1 << k, k) is reachable
+
+                int arrival = graph.getValidArrivalTime(startCity, cities[k], 0);
+                if (arrival != -1 && !missesDeadline(graph, cities, ((1L << m) - 1) & ~(1L << k), arrival)) {
+                    layer.add(graph.distance(startCity, cities[k]), arrival);
+                }
+            }
+        }
+        layer.first[m * m] = layer.size;
+
+        for (int size = 2; size <= m && layer.size > 0; size++) {
+            int[] targetMasks = masksWithBitCount(m, size);
+            for (int position = 0; position < targetMasks.length; position++) {
+                rank[targetMasks[position]] = position;
+            }
+
+            // Each task fills its own block of target masks, then the blocks are joined in mask order
+            LabelBlock[] blocks = new LabelBlock[(targetMasks.length + MASKS_PER_TASK - 1) / MASKS_PER_TASK];
+            pool.invoke(new LayerTask(graph, cities, rank, layer, targetMasks, blocks, 0, blocks.length));
+            layer = LabelBlock.concat(blocks, Math.multiplyExact(targetMasks.length, m));
+        }
+
+        // Close the tour at the starting city, the last layer holds only the full mask
+        int minCost = Integer.MAX_VALUE;
+        int minTotalTime = Integer.MAX_VALUE;
+        if (layer.size > 0) {
+            for (int i = 0; i < m; i++) {
+                int travelTime = graph.travelTime(cities[i], startCity);
+                if (travelTime == CompactGraph.NO_EDGE) continue;
+
+                for (int label = layer.first[i]; label < layer.first[i + 1]; label++) {
+                    int arrival = layer.time[label] + travelTime;
+                    if (arrival > graph.latest(startCity)) continue;
+
+                    int totalCost = layer.cost[label] + graph.distance(cities[i], startCity);
+                    int totalTime = Math.max(arrival, graph.earliest(startCity));
+                    if (totalCost < minCost || (totalCost == minCost && totalTime < minTotalTime)) {
+                        minCost = totalCost;
+                        minTotalTime = totalTime;
+                    }
+                }
+            }
+        }
+
+        if (minCost == Integer.MAX_VALUE) return new int[]{-1, -1};
+        return new int[]{minCost, minTotalTime};
+    }
+
+    // Rejects instances whose dense table would not fit in memory before any of it is allocated
+    private static void checkDenseSize(int n) {
+        if (n > MAX_DENSE_CITIES) {
+            throw new IllegalArgumentException("Too many cities for the dense dynamic programming table: " + n
+                    + ", at most " + MAX_DENSE_CITIES + ".");
+        }
+    }
+
+    // All masks over m bits with exactly 'bitCount' bits set, in ascending order (Gosper's hack)
+    private static int[] masksWithBitCount(int m, int bitCount) {
+        long count = 1;
+        for (int i = 0; i < bitCount; i++) {
+            count = count * (m - i) / (i + 1);
+        }
+        int[] masks = new int[(int) count];
+        int mask = (1 << bitCount) - 1;
+        for (int i = 0; i < masks.length; i++) {
+            masks[i] = mask;
+            int lowest = mask & -mask;
+            int ripple = mask + lowest;
+            mask = ripple | (((mask ^ ripple) >>> 2) / lowest);
+        }
+        return masks;
+    }
+
+    private static long stateKey(long mask, int node) {
+        return (mask << NODE_BITS) | node;
+    }
+
+    // True if some city in 'remaining' closes before 'time', no extension of the label can visit it
+    private static boolean missesDeadline(CompactGraph graph, int[] cities, long remaining, int time) {
+        while (remaining != 0) {
+            int k = Long.numberOfTrailingZeros(remaining);
+            if (graph.latest(cities[k]) < time) return true;
+            remaining &= remaining - 1;
+        }
+        return false;
+    }
+
+    /**
+     * Dense Pareto-label table over (mask, node) states of the cities other than the start city,
+     * filled on construction together with the best way to close the tour.
+     */
+    private static class ParetoTable {
+        private final CompactGraph graph;
+        private final int startCity;
+        private final int[] cities; // The start city is never part of a mask, masks cover these m cities
+        private final int[] head; // head[mask * m + k] -> first label of the state, -1 if unreached
+        private final LabelPool labels = new LabelPool();
+        private int bestLast = -1; // Last city index before returning to the start
+        private int bestLabel = -1;
+        private int bestCost = Integer.MAX_VALUE;
+        private int bestTime = Integer.MAX_VALUE;
+
+        private ParetoTable(CompactGraph graph, int startCity, SolverControl control) {
+            this.graph = graph;
+            this.startCity = startCity;
+            int n = graph.size();
+            checkDenseSize(n);
+
+            int m = Math.max(n - 1, 0);
+            cities = new int[m];
+            for (int city = 0, k = 0; city < n; city++) {
+                if (city != startCity) cities[k++] = city;
+            }
+            head = new int[Math.toIntExact((1L << m) * m)];
+            Arrays.fill(head, -1);
+            if (m > 0 && fill(control)) {
+                close();
+            }
+        }
+
+        // Returns false if the control stopped the fill before every state was expanded
+        private boolean fill(SolverControl control) {
+            int m = cities.length;
+
+            // Base case: leave the start city at time 0 towards every other city
+            for (int k = 0; k < m; k++) {
+                int arrival = graph.getValidArrivalTime(startCity, cities[k], 0);
+                if (arrival != -1) {
+                    head[(1 << k) * m + k] = labels.insert(-1, graph.distance(startCity, cities[k]), arrival, -1);
+                }
+            }
+
+            // Every transition goes to a larger mask, so ascending order visits states after all their predecessors
+            for (int mask = 1; mask < (1 << m); mask++) {
+                if (control != null && (mask & MASKS_PER_POLL - 1) == 0 && control.shouldStop()) {
+                    return false;
+                }
+                for (int i = 0; i < m; i++) {
+                    int state = mask * m + i;
+                    if (head[state] == -1) continue; // Node 'i' not reached with this mask
+
+                    for (int j = 0; j < m; j++) {
+                        if ((mask & (1 << j)) != 0) continue; // Node 'j' already visited
+
+                        int travelTime = graph.travelTime(cities[i], cities[j]);
+                        if (travelTime == CompactGraph.NO_EDGE) continue; // Skip invalid paths
+                        int distance = graph.distance(cities[i], cities[j]);
+                        int target = (mask | (1 << j)) * m + j;
+
+                        for (int label = head[state]; label != -1; label = labels.next[label]) {
+                            int arrival = labels.time[label] + travelTime;
+                            if (arrival > graph.latest(cities[j])) continue; // Latest time window violated
+
+                            int newTime = Math.max(arrival, graph.earliest(cities[j]));
+                            head[target] = labels.insert(head[target], labels.cost[label] + distance, newTime, i);
+                        }
+                    }
+                }
+            }
+            return true;
+        }
+
+        // Close the tour at the starting city and keep the cheapest, then earliest, result
+        private void close() {
+            int m = cities.length;
+            int fullMask = (1 << m) - 1;
+            for (int i = 0; i < m; i++) {
+                int travelTime = graph.travelTime(cities[i], startCity);
+                if (travelTime == CompactGraph.NO_EDGE) continue;
+
+                for (int label = head[fullMask * m + i]; label != -1; label = labels.next[label]) {
+                    int arrival = labels.time[label] + travelTime;
+                    if (arrival > graph.latest(startCity)) continue;
+
+                    int totalCost = labels.cost[label] + graph.distance(cities[i], startCity);
+                    int totalTime = Math.max(arrival, graph.earliest(startCity));
+                    if (totalCost < bestCost || (totalCost == bestCost && totalTime < bestTime)) {
+                        bestCost = totalCost;
+                        bestTime = totalTime;
+                        bestLast = i;
+                        bestLabel = label;
+                    }
+                }
+            }
+        }
+
+        // Follows the parent cities back from the best final label
+        private int[] reconstructTour() {
+            int m = cities.length;
+            int[] tour = new int[m + 2];
+            tour[0] = startCity;
+            tour[m + 1] = startCity;
+
+            int mask = (1 << m) - 1;
+            int node = bestLast;
+            int label = bestLabel;
+            for (int position = m; position >= 1; position--) {
+                tour[position] = cities[node];
+                int parent = labels.parent[label];
+                if (parent == -1) break; // Reached directly from the start city
+
+                // A label of the parent state that extends to exactly this cost and time
+                int previousMask = mask & ~(1 << node);
+                label = findPredecessor(head[previousMask * m + parent], parent, node, label);
+                mask = previousMask;
+                node = parent;
+            }
+            return tour;
+        }
+
+        private int findPredecessor(int parentHead, int parent, int node, int label) {
+            int travelTime = graph.travelTime(cities[parent], cities[node]);
+            int distance = graph.distance(cities[parent], cities[node]);
+            for (int candidate = parentHead; candidate != -1; candidate = labels.next[candidate]) {
+                int arrival = labels.time[candidate] + travelTime;
+                if (labels.cost[candidate] + distance == labels.cost[label]
+                        && arrival <= graph.latest(cities[node])
+                        && Math.max(arrival, graph.earliest(cities[node])) == labels.time[label]) {
+                    return candidate;
+                }
+            }
+            // Parent states are final before they are extended, so the predecessor is always still there
+            throw new IllegalStateException("Missing predecessor label.");
+        }
+    }
+
+    /**
+     * Pool of (cost, time) labels kept in parallel primitive arrays. The labels of one state form a
+     * singly linked list through {@code next}, so no label objects are allocated. Dominated labels are
+     * unlinked into a free list, also through {@code next}, and their slots reused by the next inserts,
+     * so the pool grows with the labels alive at once rather than with every label ever inserted.
+     */
+    private static class LabelPool {
+        private int[] cost = new int[1024];
+        private int[] time = new int[1024];
+        private int[] next = new int[1024];
+        private byte[] parent = new byte[1024]; // Index of the previous city in the mask, -1 for the start city
+        private int size;
+        private int free = -1; // First unlinked slot, -1 if none
+
+        /**
+         * Adds a label to a state's list unless an existing label dominates it, and unlinks the labels it dominates.
+         *
+         * @param head first label of the state, -1 for an empty state
+         * @return the new first label of the state
+         */
+        private int insert(int head, int newCost, int newTime) {
+            return insert(head, newCost, newTime, -1);
+        }
+
+        /**
+         * Same as {@link #insert(int, int, int)}, also recording the city the label was extended from.
+         */
+        private int insert(int head, int newCost, int newTime, int parentCity) {
+            // Rejected if an existing label is at least as cheap and as early
+            for (int label = head; label != -1; label = next[label]) {
+                if (cost[label] <= newCost && time[label] <= newTime) {
+                    return head;
+                }
+            }
+
+            // Drop the labels the new one dominates. A state is complete before it is extended, so no
+            // other label was built from them and their slots can be reused
+            int previous = -1;
+            for (int label = head; label != -1; ) {
+                int following = next[label];
+                if (newCost <= cost[label] && newTime <= time[label]) {
+                    if (previous == -1) head = following;
+                    else next[previous] = following;
+                    next[label] = free;
+                    free = label;
+                } else {
+                    previous = label;
+                }
+                label = following;
+            }
+
+            int label;
+            if (free != -1) {
+                label = free;
+                free = next[label];
+            } else {
+                if (size == cost.length) {
+                    cost = Arrays.copyOf(cost, size * 2);
+                    time = Arrays.copyOf(time, size * 2);
+                    next = Arrays.copyOf(next, size * 2);
+                    parent = Arrays.copyOf(parent, size * 2);
+                }
+                label = size++;
+            }
+            cost[label] = newCost;
+            time[label] = newTime;
+            next[label] = head;
+            parent[label] = (byte) parentCity;
+            return label;
+        }
+    }
+
+    /**
+     * Labels of a run of states stored back to back: the labels of state s are
+     * {@code cost/time[first[s] .. first[s + 1] - 1]}, where state = maskPosition * m + node.
+     */
+    private static class LabelBlock {
+        private final int[] first;
+        private int[] cost = new int[256];
+        private int[] time = new int[256];
+        private int size;
+
+        private LabelBlock(int states) {
+            first = new int[states + 1];
+        }
+
+        private void add(int newCost, int newTime) {
+            if (size == cost.length) {
+                int capacity = Math.multiplyExact(size, 2); // Fails instead of wrapping past 2^31 labels
+                cost = Arrays.copyOf(cost, capacity);
+                time = Arrays.copyOf(time, capacity);
+            }
+            cost[size] = newCost;
+            time[size] = newTime;
+            size++;
+        }
+
+        /**
+         * Adds a label to the state whose labels start at 'from', the last state of the block.
+         * Rejected if dominated, and the labels it dominates are compacted away.
+         */
+        private void addNonDominated(int from, int newCost, int newTime) {
+            for (int label = from; label < size; label++) {
+                if (cost[label] <= newCost && time[label] <= newTime) return;
+            }
+            int kept = from;
+            for (int label = from; label < size; label++) {
+                if (!(newCost <= cost[label] && newTime <= time[label])) {
+                    cost[kept] = cost[label];
+                    time[kept] = time[label];
+                    kept++;
+                }
+            }
+            size = kept;
+            add(newCost, newTime);
+        }
+
+        // Joins consecutive blocks into one layer, shifting every block's offsets by the labels before it
+        private static LabelBlock concat(LabelBlock[] blocks, int states) {
+            LabelBlock layer = new LabelBlock(states);
+            int total = 0;
+            for (LabelBlock block : blocks) total = Math.addExact(total, block.size);
+            layer.cost = new int[Math.max(total, 1)];
+            layer.time = new int[Math.max(total, 1)];
+
+            int state = 0;
+            for (LabelBlock block : blocks) {
+                System.arraycopy(block.cost, 0, layer.cost, layer.size, block.size);
+                System.arraycopy(block.time, 0, layer.time, layer.size, block.size);
+                int blockStates = block.first.length - 1;
+                for (int s = 0; s < blockStates; s++) {
+                    layer.first[state++] = block.first[s] + layer.size;
+                }
+                layer.size += block.size;
+            }
+            layer.first[states] = layer.size;
+            return layer;
+        }
+    }
+
+    // Builds the blocks [fromBlock, toBlock) of the next layer, splitting the range until one block is left
+    private static class LayerTask extends RecursiveAction {
+        private final CompactGraph graph;
+        private final int[] cities;
+        private final int[] rank;
+        private final LabelBlock previous;
+        private final int[] targetMasks;
+        private final LabelBlock[] blocks;
+        private final int fromBlock;
+        private final int toBlock;
+
+        private LayerTask(CompactGraph graph, int[] cities, int[] rank, LabelBlock previous, int[] targetMasks,
+                          LabelBlock[] blocks, int fromBlock, int toBlock) {
+            this.graph = graph;
+            this.cities = cities;
+            this.rank = rank;
+            this.previous = previous;
+            this.targetMasks = targetMasks;
+            this.blocks = blocks;
+            this.fromBlock = fromBlock;
+            this.toBlock = toBlock;
+        }
+
+        @Override
+        protected void compute() {
+            if (toBlock - fromBlock > 1) {
+                int middle = (fromBlock + toBlock) >>> 1;
+                invokeAll(new LayerTask(graph, cities, rank, previous, targetMasks, blocks, fromBlock, middle),
+                        new LayerTask(graph, cities, rank, previous, targetMasks, blocks, middle, toBlock));
+                return;
+            }
+
+            int m = cities.length;
+            long fullMask = (1L << m) - 1;
+            int fromMask = fromBlock * MASKS_PER_TASK;
+            int toMask = Math.min(targetMasks.length, fromMask + MASKS_PER_TASK);
+            int states = Math.multiplyExact(toMask - fromMask, m);
+            LabelBlock block = new LabelBlock(states);
+
+            for (int position = fromMask; position < toMask; position++) {
+                int mask = targetMasks[position];
+                for (int j = 0; j < m; j++) {
+                    int state = (position - fromMask) * m + j;
+                    block.first[state] = block.size;
+                    if ((mask & (1 << j)) == 0) continue; // State (mask, j) needs j inside the mask
+
+                    // Pull every label of (mask without j, i) across the arc i -> j
+                    int previousMask = mask & ~(1 << j);
+                    int previousBase = Math.multiplyExact(rank[previousMask], m);
+                    for (int i = 0; i < m; i++) {
+                        if ((previousMask & (1 << i)) == 0) continue;
+
+                        int travelTime = graph.travelTime(cities[i], cities[j]);
+                        if (travelTime == CompactGraph.NO_EDGE) continue; // Skip invalid paths
+                        int distance = graph.distance(cities[i], cities[j]);
+
+                        int previousState = previousBase + i;
+                        for (int label = previous.first[previousState]; label < previous.first[previousState + 1]; label++) {
+                            int arrival = previous.time[label] + travelTime;
+                            if (arrival > graph.latest(cities[j])) continue; // Latest time window violated
+
+                            int newTime = Math.max(arrival, graph.earliest(cities[j]));
+                            if (missesDeadline(graph, cities, fullMask & ~mask, newTime)) continue;
+                            block.addNonDominated(block.first[state], previous.cost[label] + distance, newTime);
+                        }
+                    }
+                }
+            }
+            block.first[states] = block.size;
+            blocks[fromBlock] = block;
+        }
+    }
 }
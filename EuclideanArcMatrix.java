@@ -0,0 +1,59 @@
+/**
+ * {@link ArcMatrix} of the Euclidean distances between points in the plane, truncated to int as in the
+ * Dumas and Gendreau benchmark instances, computed on every read instead of stored.
+ * It takes O(n) memory, so a coordinate instance of any size is ready as soon as its points are read,
+ * and a read costs a square root instead of a likely cache miss on a large matrix.
+ * <p>
+ * An optional service time per city is added to every arc leaving it, which turns the distances into
+ * the travel times of Solomon-style instances. A city is not connected to itself.
+ */
+public final class EuclideanArcMatrix implements ArcMatrix {
+
+    private final double[] x;
+    private final double[] y;
+    private final int[] serviceTime; // Added to the arcs leaving each city, null for none
+
+    /**
+     * @param x           X coordinate per city.
+     * @param y           Y coordinate per city.
+     * @param serviceTime Time spent at each city before leaving it, or null. The arrays are owned by the
+     *                    new matrix.
+     */
+    EuclideanArcMatrix(double[] x, double[] y, int[] serviceTime) {
+        if (y.length != x.length || (serviceTime != null && serviceTime.length != x.length)) {
+            throw new IllegalArgumentException("Array sizes do not match the number of cities.");
+        }
+        this.x = x;
+        this.y = y;
+        this.serviceTime = serviceTime;
+    }
+
+    @Override
+    public int size() {
+        return x.length;
+    }
+
+    @Override
+    public int get(int from, int to) {
+        if (from == to) {
+            return CompactGraph.NO_EDGE;
+        }
+        double dx = x[from] - x[to];
+        double dy = y[from] - y[to];
+        int distance = (int) Math.sqrt(dx * dx + dy * dy);
+        return serviceTime == null ? distance : distance + serviceTime[from];
+    }
+
+    @Override
+    public void getRow(int from, int[] row, int offset) {
+        double fromX = x[from];
+        double fromY = y[from];
+        int service = serviceTime == null ? 0 : serviceTime[from];
+        for (int to = 0; to < x.length; to++) {
+            double dx = fromX - x[to];
+            double dy = fromY - y[to];
+            row[offset + to] = (int) Math.sqrt(dx * dx + dy * dy) + service;
+        }
+        row[offset + from] = CompactGraph.NO_EDGE;
+    }
+}
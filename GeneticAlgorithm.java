@@ -0,0 +1,461 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Island-model genetic algorithm for instances too large for the exact solvers. Every pool thread evolves
+ * its own population with order crossover, a segment relocation mutation and a time window repair.
+ * Tours are ranked with {@link CompactGraph#calculatePenalizedPathCost}, so infeasible offspring still
+ * guide the search. Every few generations each island sends its best tour to the next island over a
+ * lock-free queue. New best feasible tours are polished with {@link LocalSearch} and shared by all islands.
+ */
+public class GeneticAlgorithm {
+
+    public static final int DEFAULT_POPULATION_SIZE = 40;
+    // Generations between two migrations
+    public static final int DEFAULT_MIGRATION_INTERVAL = 50;
+    // Initial tours built by randomized greedy, the rest of the population are mutated copies of them
+    private static final int SEEDED_TOURS = 4;
+    private static final int GREEDY_CANDIDATES = 3;
+    private static final int MUTATION_PERCENT = 30;
+    // Longest segment moved by the mutation, and how far it may move
+    private static final int MUTATION_LENGTH = 3;
+    private static final int MUTATION_RANGE = 20;
+    // Adjacent swaps tried by the repair
+    private static final int REPAIR_PASSES = 2;
+    private static final long DEFAULT_SEED = 42;
+
+    /**
+     * Solves the TSPTW problem with one island per core of the common pool within a time budget.
+     *
+     * @param graph        The graph object containing cities and connections.
+     * @param startCity    The starting city name.
+     * @param budgetMillis Wall-clock time the search may use, measured from this call.
+     * @return The best path found as a list of city names, or null if no feasible path was found.
+     */
+    public static List<String> solveTSPTW_Genetic(Graph graph, String startCity, long budgetMillis) {
+        long deadlineNanos = System.nanoTime() + budgetMillis * 1_000_000L;
+        CompactGraph compactGraph = graph.toCompactGraph();
+        int start = compactGraph.indexOf(startCity);
+        if (start == -1) {
+            return null; // Unknown start city
+        }
+        Result result = solveTSPTW_Genetic(compactGraph, start, DEFAULT_POPULATION_SIZE, DEFAULT_MIGRATION_INTERVAL,
+                deadlineNanos, DEFAULT_SEED, ForkJoinPool.commonPool());
+        return compactGraph.toCityNames(result.getTour());
+    }
+
+    /**
+     * Evolves one island per thread of the pool until the deadline.
+     *
+     * @param graph             The compact graph containing cities and connections.
+     * @param startCity         The starting city id.
+     * @param populationSize    Tours per island, at least 2.
+     * @param migrationInterval Generations between two migrations.
+     * @param deadlineNanos     {@link System#nanoTime()} value at which the best tour is returned.
+     * @param seed              Seed of the islands' random sources, island i uses its own stream.
+     * @param pool              The pool running the islands.
+     * @return the best feasible tour with the search statistics, the tour is null if none was found
+     */
+    public static Result solveTSPTW_Genetic(CompactGraph graph, int startCity, int populationSize,
+                                            int migrationInterval, long deadlineNanos, long seed, ForkJoinPool pool) {
+        return solveTSPTW_Genetic(graph, startCity, populationSize, migrationInterval, new SolverControl(deadlineNanos),
+                seed, pool);
+    }
+
+    /**
+     * Same as {@link #solveTSPTW_Genetic(CompactGraph, int, int, int, long, long, ForkJoinPool)}, the islands
+     * stop when the control says so.
+     */
+    public static Result solveTSPTW_Genetic(CompactGraph graph, int startCity, int populationSize,
+                                            int migrationInterval, SolverControl control, long seed, ForkJoinPool pool) {
+        if (populationSize < 2) {
+            throw new IllegalArgumentException("A population needs at least two tours.");
+        }
+        long startNanos = System.nanoTime();
+        int islands = pool.getParallelism();
+        Shared shared = new Shared(graph, startCity, populationSize, migrationInterval, control, islands);
+
+        List<Island> tasks = new ArrayList<>(islands);
+        for (int i = 0; i < islands; i++) {
+            tasks.add(new Island(shared, i, new Random(seed + i * 0x9E3779B97F4A7C15L)));
+        }
+        if (graph.size() > 3) {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        } else {
+            // Too few cities to recombine, the greedy tour is all there is
+            tasks.get(0).offerFeasible(Greedy.solveTSPTW_Greedy(graph, startCity));
+        }
+
+        Incumbent best = shared.best.get();
+        return new Result(best, shared.generations.sum(), shared.migrations.sum(), islands,
+                System.nanoTime() - startNanos);
+    }
+
+    // An immutable best tour, replaced as a whole so readers never see a half-written one
+    private static class Incumbent {
+        private final int[] tour;
+        private final int cost;
+        private final int time;
+
+        private Incumbent(int[] tour, int cost, int time) {
+            this.tour = tour;
+            this.cost = cost;
+            this.time = time;
+        }
+
+        private boolean isBetterThan(Incumbent other) {
+            return other == null || cost < other.cost || (cost == other.cost && time < other.time);
+        }
+    }
+
+    // State read by all islands
+    private static class Shared {
+        private final CompactGraph graph;
+        private final int startCity;
+        private final int populationSize;
+        private final int migrationInterval;
+        private final SolverControl control;
+        private final int latenessPenalty;
+        private final int missingEdgePenalty;
+        private final List<ConcurrentLinkedQueue<int[]>> inboxes; // Migrants waiting for each island
+        private final AtomicReference<Incumbent> best = new AtomicReference<>();
+        private final LongAdder generations = new LongAdder();
+        private final LongAdder migrations = new LongAdder();
+
+        private Shared(CompactGraph graph, int startCity, int populationSize, int migrationInterval,
+                       SolverControl control, int islands) {
+            this.graph = graph;
+            this.startCity = startCity;
+            this.populationSize = populationSize;
+            this.migrationInterval = migrationInterval;
+            this.control = control;
+
+            // One time unit late costs more than any single edge, a missing edge more than any tour
+            int n = graph.size();
+            long longestEdge = 0;
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    longestEdge = Math.max(longestEdge, graph.distance(i, j));
+                }
+            }
+            latenessPenalty = (int) Math.min(longestEdge + 1, Integer.MAX_VALUE / n);
+            missingEdgePenalty = (int) Math.min((longestEdge + 1) * n, Integer.MAX_VALUE / n);
+
+            inboxes = new ArrayList<>(islands);
+            for (int i = 0; i < islands; i++) {
+                inboxes.add(new ConcurrentLinkedQueue<>());
+            }
+        }
+
+        private boolean isExpired() {
+            return control.shouldStop();
+        }
+
+        private long fitness(int[] tour) {
+            return graph.calculatePenalizedPathCost(tour, latenessPenalty, missingEdgePenalty);
+        }
+
+        // Replaces the incumbent if the tour is better, retrying when another island got there first
+        private void offer(Incumbent candidate) {
+            Incumbent current = best.get();
+            while (candidate.isBetterThan(current)) {
+                if (best.compareAndSet(current, candidate)) return;
+                current = best.get();
+            }
+        }
+    }
+
+    private static class Island extends RecursiveAction {
+        private final Shared shared;
+        private final CompactGraph graph;
+        private final int index;
+        private final Random random;
+        private final int[][] population;
+        private final long[] fitness;
+        private final int[] stamp; // Crossover marks, a city is taken when stamp[city] == generation
+        private long generation;
+        private int bestFeasibleCost = Integer.MAX_VALUE;
+
+        private Island(Shared shared, int index, Random random) {
+            this.shared = shared;
+            this.graph = shared.graph;
+            this.index = index;
+            this.random = random;
+            this.population = new int[shared.populationSize][];
+            this.fitness = new long[shared.populationSize];
+            this.stamp = new int[graph.size()];
+        }
+
+        @Override
+        protected void compute() {
+            initialize();
+            while (!shared.isExpired()) {
+                generation++;
+                int[] child = crossover(population[tournament()], population[tournament()]);
+                if (random.nextInt(100) < MUTATION_PERCENT) {
+                    mutate(child);
+                }
+                repair(child);
+                replaceWorst(child, shared.fitness(child));
+
+                if (generation % shared.migrationInterval == 0) {
+                    migrate();
+                }
+                shared.generations.increment();
+            }
+        }
+
+        // Randomized greedy tours (the first island also gets the plain greedy tour) plus mutated copies
+        private void initialize() {
+            int n = graph.size();
+            List<int[]> seeds = new ArrayList<>();
+            for (int k = 0; k < SEEDED_TOURS && !shared.isExpired(); k++) {
+                int candidates = index == 0 && k == 0 ? 1 : GREEDY_CANDIDATES;
+                int[] tour = Greedy.solveTSPTW_RandomizedGreedy(graph, shared.startCity, candidates, random);
+                if (tour != null) {
+                    seeds.add(tour);
+                    offerFeasible(tour);
+                }
+            }
+            if (seeds.isEmpty()) {
+                seeds.add(randomTour(n)); // Every construction got stuck, start from a random permutation
+            }
+
+            for (int k = 0; k < population.length; k++) {
+                int[] tour = seeds.get(k % seeds.size()).clone();
+                if (k >= seeds.size()) {
+                    for (int move = 0; move < 1 + k % MUTATION_LENGTH; move++) {
+                        mutate(tour);
+                    }
+                }
+                population[k] = tour;
+                fitness[k] = shared.fitness(tour);
+            }
+        }
+
+        private int[] randomTour(int n) {
+            int[] tour = new int[n + 1];
+            tour[0] = shared.startCity;
+            tour[n] = shared.startCity;
+            for (int city = 0, k = 1; city < n; city++) {
+                if (city != shared.startCity) tour[k++] = city;
+            }
+            for (int k = n - 1; k > 1; k--) {
+                int other = 1 + random.nextInt(k);
+                int temp = tour[k];
+                tour[k] = tour[other];
+                tour[other] = temp;
+            }
+            return tour;
+        }
+
+        // Binary tournament, the index of the fitter of two random tours
+        private int tournament() {
+            int a = random.nextInt(population.length);
+            int b = random.nextInt(population.length);
+            return fitness[a] <= fitness[b] ? a : b;
+        }
+
+        /**
+         * Order crossover (OX): the child keeps a random slice of the first parent in place and takes the
+         * other cities in the order they appear in the second parent, starting after the slice.
+         */
+        private int[] crossover(int[] first, int[] second) {
+            int last = first.length - 1; // Index of the closing start city
+            int from = 1 + random.nextInt(last - 1);
+            int to = from + random.nextInt(last - from);
+            int mark = (int) generation;
+
+            int[] child = new int[first.length];
+            child[0] = shared.startCity;
+            child[last] = shared.startCity;
+            for (int k = from; k <= to; k++) {
+                child[k] = first[k];
+                stamp[first[k]] = mark;
+            }
+
+            int position = to == last - 1 ? 1 : to + 1;
+            for (int step = 0; step < last - 1; step++) {
+                int k = 1 + (to + step) % (last - 1);
+                int city = second[k];
+                if (stamp[city] == mark) continue;
+                child[position] = city;
+                position = position == last - 1 ? 1 : position + 1;
+            }
+            return child;
+        }
+
+        // Moves a short segment a few positions away, most far moves break a window anyway
+        private void mutate(int[] tour) {
+            int last = tour.length - 1;
+            int length = 1 + random.nextInt(Math.min(MUTATION_LENGTH, last - 2));
+            int from = 1 + random.nextInt(last - length);
+            int lowest = Math.max(1, from - MUTATION_RANGE);
+            int highest = Math.min(last - length, from + MUTATION_RANGE);
+            int to = lowest + random.nextInt(highest - lowest + 1);
+            if (to == from) return;
+
+            int[] segment = new int[length];
+            System.arraycopy(tour, from, segment, 0, length);
+            if (to < from) {
+                System.arraycopy(tour, to, tour, to + length, from - to);
+            } else {
+                System.arraycopy(tour, from + length, tour, from, to - from);
+            }
+            System.arraycopy(segment, 0, tour, to, length);
+        }
+
+        /**
+         * Time window repair: a city reached after its latest time is swapped with the city before it
+         * when that city closes later, which moves urgent cities forward like a due-date sort.
+         */
+        private void repair(int[] tour) {
+            int last = tour.length - 1;
+            for (int pass = 0; pass < REPAIR_PASSES; pass++) {
+                boolean changed = false;
+                int currentTime = 0;
+                for (int k = 1; k < last; k++) {
+                    int travelTime = graph.travelTime(tour[k - 1], tour[k]);
+                    int arrivalTime = currentTime + Math.max(travelTime, 0);
+                    if (arrivalTime > graph.latest(tour[k]) && k > 1 && graph.latest(tour[k - 1]) > graph.latest(tour[k])) {
+                        int temp = tour[k];
+                        tour[k] = tour[k - 1];
+                        tour[k - 1] = temp;
+                        changed = true;
+                    }
+                    currentTime = Math.max(arrivalTime, graph.earliest(tour[k]));
+                }
+                if (!changed) return;
+            }
+        }
+
+        // The child takes the place of the worst tour if it is fitter
+        private void replaceWorst(int[] child, long childFitness) {
+            int worst = 0;
+            for (int k = 1; k < population.length; k++) {
+                if (fitness[k] > fitness[worst]) worst = k;
+            }
+            if (childFitness >= fitness[worst]) return;
+
+            // Penalized fitness never undercuts the real cost, so only these children can be a new best
+            if (childFitness <= bestFeasibleCost && graph.calculateFeasiblePathCost(child) != null) {
+                child = offerFeasible(child);
+                childFitness = shared.fitness(child);
+            }
+            population[worst] = child;
+            fitness[worst] = childFitness;
+        }
+
+        /**
+         * Polishes a feasible tour and offers it to the shared incumbent.
+         *
+         * @return the polished tour
+         */
+        private int[] offerFeasible(int[] tour) {
+            if (tour == null) return null;
+            int[] improved = LocalSearch.improve(graph, tour, 0, tour.length, shared.control);
+            int[] value = graph.calculateFeasiblePathCost(improved);
+            bestFeasibleCost = Math.min(bestFeasibleCost, value[0]);
+            shared.offer(new Incumbent(improved, value[0], value[1]));
+            return improved;
+        }
+
+        // Sends a copy of the best tour to the next island and takes in the migrants that arrived here
+        private void migrate() {
+            int best = 0;
+            for (int k = 1; k < population.length; k++) {
+                if (fitness[k] < fitness[best]) best = k;
+            }
+            int islands = shared.inboxes.size();
+            if (islands > 1) {
+                shared.inboxes.get((index + 1) % islands).offer(population[best].clone());
+            }
+
+            int[] migrant;
+            while ((migrant = shared.inboxes.get(index).poll()) != null) {
+                replaceWorst(migrant, shared.fitness(migrant));
+                shared.migrations.increment();
+            }
+        }
+    }
+
+    /**
+     * Best feasible tour of a run and its statistics.
+     */
+    public static class Result {
+        private final Incumbent best;
+        private final long generations;
+        private final long migrations;
+        private final int islands;
+        private final long elapsedNanos;
+
+        private Result(Incumbent best, long generations, long migrations, int islands, long elapsedNanos) {
+            this.best = best;
+            this.generations = generations;
+            this.migrations = migrations;
+            this.islands = islands;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return the best feasible tour as city ids, or null if none was found
+         */
+        public int[] getTour() {
+            return best == null ? null : best.tour;
+        }
+
+        /**
+         * @return the cost of the best tour, or -1 if there is none
+         */
+        public int getCost() {
+            return best == null ? -1 : best.cost;
+        }
+
+        /**
+         * @return the return time of the best tour, or -1 if there is none
+         */
+        public int getTime() {
+            return best == null ? -1 : best.time;
+        }
+
+        /**
+         * @return the number of offspring produced by all islands
+         */
+        public long getGenerations() {
+            return generations;
+        }
+
+        /**
+         * @return the number of migrants received by all islands
+         */
+        public long getMigrations() {
+            return migrations;
+        }
+
+        public int getIslands() {
+            return islands;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "GeneticAlgorithm {cost=" + (best == null ? "none" : best.cost) + ", generations=" + generations
+                    + ", migrations=" + migrations + ", islands=" + islands
+                    + ", elapsedMillis=" + elapsedNanos / 1_000_000 + "}";
+        }
+    }
+}
@@ -5,11 +5,84 @@ public class Graph {
     // Map of city names to their corresponding nodes
     private final Map<String, Node> citiesMap;
 
+    // Bumped by every method that changes the graph
+    private long version;
+
+    // Data derived from the graph, built on first use and shared until the version changes. Every getter of
+    // a derived part synchronizes on the graph, so threads reading an unchanged graph at the same time build
+    // each part once and see it fully built. Changing the graph while other threads read it is not supported.
+    private Derived derived = new Derived(0);
+
     // Constructor to initialize the graph
     public Graph() {
         citiesMap = new HashMap<>();
     }
 
+    // Graph of a known number of cities that keeps them in insertion order, see fromMatrices
+    private Graph(int cities) {
+        citiesMap = new LinkedHashMap<>(cities * 2);
+    }
+
+    /**
+     * Builds a graph from city arrays and full matrices in one call, for dense instances where
+     * {@link #connectCities(String, String, int, int)} would look up both names and check for a duplicate edge
+     * on every pair. The input is validated in one pass, every neighbour map is sized up front and the
+     * compact graph the solvers use is packed from the matrices directly and cached, so {@link #toCompactGraph()}
+     * does not walk the edges. City ids follow the order of the arrays.
+     * Callers that only solve and never edit can skip the edge objects with
+     * {@link CompactGraph#fromMatrices(String[], int[], int[], int[][], int[][])}.
+     *
+     * @param names         City names, unique.
+     * @param earliestTimes Earliest visiting time per city.
+     * @param latestTimes   Latest visiting time per city.
+     * @param distances     distances[i][j] between city i and city j, {@link CompactGraph#NO_EDGE} where they are
+     *                      not connected. Edges go both ways, so the matrix must be symmetric. The diagonal is ignored.
+     * @param travelTimes   Travel times in the same form, with an edge exactly where distances has one.
+     * @return the graph, its first change bumps the version as usual
+     * @throws IllegalArgumentException if the sizes do not match, a name repeats, a window is empty, a value is
+     *                                  negative, the matrices disagree on an edge or are not symmetric, or there
+     *                                  are too many cities for the matrices to fit in arrays
+     */
+    public static Graph fromMatrices(String[] names, int[] earliestTimes, int[] latestTimes,
+                                     int[][] distances, int[][] travelTimes) {
+        CompactGraph compactGraph = CompactGraph.fromMatrices(names, earliestTimes, latestTimes, distances, travelTimes);
+        // A symmetric matrix is always packed, too many cities to pack fail in fromMatrices with their own message
+        if (!(compactGraph.getDistanceMatrix() instanceof PackedSymmetricMatrix)
+                || !(compactGraph.getTravelTimeMatrix() instanceof PackedSymmetricMatrix)) {
+            throw new IllegalArgumentException("Edges go both ways, the matrices must be symmetric.");
+        }
+
+        int n = names.length;
+        Graph graph = new Graph(n);
+        Node[] nodes = new Node[n];
+        for (int i = 0; i < n; i++) {
+            int degree = 0;
+            for (int j = 0; j < n; j++) {
+                if (j != i && distances[i][j] != CompactGraph.NO_EDGE) degree++;
+            }
+            nodes[i] = new Node(names[i], earliestTimes[i], latestTimes[i], degree);
+            graph.citiesMap.put(names[i], nodes[i]);
+        }
+        // Validated already, so the edges go in without the checks of connectCities
+        for (int i = 0; i < n; i++) {
+            int[] distanceRow = distances[i];
+            int[] travelTimeRow = travelTimes[i];
+            for (int j = i + 1; j < n; j++) {
+                if (distanceRow[j] != CompactGraph.NO_EDGE) {
+                    nodes[i].neighbours.put(nodes[j], new Edge(nodes[j], distanceRow[j], travelTimeRow[j]));
+                    nodes[j].neighbours.put(nodes[i], new Edge(nodes[i], distanceRow[j], travelTimeRow[j]));
+                }
+            }
+        }
+
+        graph.modified();
+        Derived data = graph.derived();
+        data.compactGraph = compactGraph;
+        data.earliestTimes = earliestTimes.clone();
+        data.latestTimes = latestTimes.clone();
+        return graph;
+    }
+
     // --------- Graph Construction Methods ---------
 
     /**
@@ -27,6 +100,7 @@ public class Graph {
             throw new IllegalArgumentException("Earliest time cannot be greater than latest time.");
         }
         citiesMap.put(name, new Node(name, earliestTime, latestTime));
+        modified();
         return true;
     }
 
@@ -55,6 +129,7 @@ public class Graph {
             // Add bidirectional edges
             fromNode.addNeighbor(toNode, distance, travelTime);
             toNode.addNeighbor(fromNode, distance, travelTime);
+            modified();
             return true;
         }
         return false;
@@ -78,6 +153,14 @@ public class Graph {
         return citiesMap.size();
     }
 
+    /**
+     * @param name The name of the city.
+     * @return true if the graph has a city with that name
+     */
+    public boolean hasCity(String name) {
+        return citiesMap.containsKey(name);
+    }
+
     /**
      * Retrieves the travel distance between two cities.
      *
@@ -199,6 +282,7 @@ public class Graph {
 
     public void clearMap() {
         citiesMap.clear();
+        modified();
     }
 
     // --------- Utility Methods ---------
@@ -283,11 +367,21 @@ public class Graph {
     }
 
     /**
-     * Converts the graph to an adjacency matrix.
+     * Converts the graph to an adjacency matrix. The matrix is built once per version of the graph and
+     * shared by every caller until the graph changes, so it must not be modified.
      *
      * @return The adjacency matrix.
      */
-    public int[][] toAdjacencyMatrix() {
+    public synchronized int[][] toAdjacencyMatrix() {
+        Derived data = derived();
+        if (data.adjacencyMatrix == null) {
+            data.adjacencyMatrix = buildAdjacencyMatrix();
+        }
+        return data.adjacencyMatrix;
+    }
+
+    // Distance matrix, Integer.MAX_VALUE where two cities are not connected
+    private int[][] buildAdjacencyMatrix() {
         int n = citiesMap.size();
         int[][] matrix = new int[n][n];
         List<Node> nodeList = new ArrayList<>(citiesMap.values());
@@ -303,11 +397,21 @@ public class Graph {
 
     /**
      * Converts the city's graph into a travel time matrix.
-     * The matrix represents the travel times between all pairs of cities.
+     * The matrix represents the travel times between all pairs of cities. It is built once per version of
+     * the graph and shared until the graph changes, so it must not be modified.
      *
      * @return A 2D array representing the travel time matrix.
      */
-    public int[][] toTravelTimeMatrix() {
+    public synchronized int[][] toTravelTimeMatrix() {
+        Derived data = derived();
+        if (data.travelTimeMatrix == null) {
+            data.travelTimeMatrix = buildTravelTimeMatrix();
+        }
+        return data.travelTimeMatrix;
+    }
+
+    // Travel time matrix, Integer.MAX_VALUE where two cities are not connected
+    private int[][] buildTravelTimeMatrix() {
         int n = citiesMap.size(); // Get the number of cities (nodes) in the map
         int[][] timeMatrix = new int[n][n]; // Initialize a 2D array for the travel time matrix
         List<Node> nodeList = new ArrayList<>(citiesMap.values()); // Convert the city map to a list for easy access
@@ -329,11 +433,67 @@ public class Graph {
     }
 
     /**
-     * * Converts the Cities time windows to a matrix
+     * * Converts the Cities time windows to a matrix, built once per version of the graph and shared
+     * until the graph changes, so it must not be modified.
      *
      * @return timeWindows in a matrix form
+     * @deprecated Every column pair of a row repeats the same window, which takes O(n^2) memory for O(n) data.
+     * Use {@link #toEarliestTimes()} and {@link #toLatestTimes()}, row i of this matrix holds
+     * {earliest[i], latest[i], earliest[i], latest[i], ...}.
+     */
+    @Deprecated
+    public synchronized int[][] toTimeWindowMatrix() {
+        Derived data = derived();
+        if (data.timeWindowMatrix == null) {
+            data.timeWindowMatrix = buildTimeWindowMatrix();
+        }
+        return data.timeWindowMatrix;
+    }
+
+    /**
+     * Returns the earliest visiting time of every city, in the order of the rows of the matrices.
+     * The array is built once per version of the graph and shared, so it must not be modified.
+     *
+     * @return earliest[i] of city i
+     */
+    public synchronized int[] toEarliestTimes() {
+        Derived data = derived();
+        if (data.earliestTimes == null) {
+            buildTimeWindows(data);
+        }
+        return data.earliestTimes;
+    }
+
+    /**
+     * Returns the latest visiting time of every city, in the order of the rows of the matrices.
+     * The array is built once per version of the graph and shared, so it must not be modified.
+     *
+     * @return latest[i] of city i
      */
-    public int[][] toTimeWindowMatrix() {
+    public synchronized int[] toLatestTimes() {
+        Derived data = derived();
+        if (data.latestTimes == null) {
+            buildTimeWindows(data);
+        }
+        return data.latestTimes;
+    }
+
+    // Both time window arrays in one pass over the cities
+    private void buildTimeWindows(Derived data) {
+        int n = citiesMap.size();
+        int[] earliest = new int[n];
+        int[] latest = new int[n];
+        int i = 0;
+        for (Node node : citiesMap.values()) {
+            earliest[i] = node.timeWindow.earliestTime;
+            latest[i++] = node.timeWindow.latestTime;
+        }
+        data.earliestTimes = earliest;
+        data.latestTimes = latest;
+    }
+
+    // Every row holds the earliest and latest time of the row's city, repeated once per column pair
+    private int[][] buildTimeWindowMatrix() {
         int n = citiesMap.size(); // Get the number of cities in the graph
         int[][] timeWindowMatrix = new int[n][2 * n]; // 2 columns per city: one for earliest, one for latest times
         List<Node> nodeList = new ArrayList<>(citiesMap.values()); // Convert the city map to a list for easy access
@@ -354,12 +514,144 @@ public class Graph {
         return timeWindowMatrix;
     }
 
+    /**
+     * Returns an immutable integer-indexed snapshot of the graph for the solvers.
+     * City ids follow the order of {@link #getAllCities()}. The snapshot is built once per version of the
+     * graph, so repeated solves on an unchanged graph share it.
+     *
+     * @return the compact graph
+     */
+    public synchronized CompactGraph toCompactGraph() {
+        Derived data = derived();
+        if (data.compactGraph == null) {
+            data.compactGraph = buildCompactGraph();
+        }
+        return data.compactGraph;
+    }
+
+    // Copies the time windows and every edge into flat arrays
+    private CompactGraph buildCompactGraph() {
+        int n = citiesMap.size();
+        String[] names = new String[n];
+        int[] earliest = new int[n];
+        int[] latest = new int[n];
+        Map<Node, Integer> ids = new HashMap<>(n * 2);
+
+        // Assign dense ids, copy the time windows and find the value ranges of the edges
+        int id = 0;
+        int maxDistance = 0;
+        int maxTravelTime = 0;
+        for (Node node : citiesMap.values()) {
+            names[id] = node.name;
+            earliest[id] = node.timeWindow.earliestTime;
+            latest[id] = node.timeWindow.latestTime;
+            ids.put(node, id++);
+            for (Edge edge : node.neighbours.values()) {
+                maxDistance = Math.max(maxDistance, edge.distance);
+                maxTravelTime = Math.max(maxTravelTime, edge.travelTime);
+            }
+        }
+
+        // Edges always come in symmetric pairs, so both matrices are packed triangles, missing edges stay NO_EDGE
+        PackedSymmetricMatrix distance = PackedSymmetricMatrix.create(n, maxDistance);
+        PackedSymmetricMatrix travelTime = PackedSymmetricMatrix.create(n, maxTravelTime);
+        for (Node node : citiesMap.values()) {
+            int from = ids.get(node);
+            for (Edge edge : node.neighbours.values()) {
+                int to = ids.get(edge.to);
+                distance.set(from, to, edge.distance);
+                travelTime.set(from, to, edge.travelTime);
+            }
+        }
+        return new CompactGraph(names, distance, travelTime, earliest, latest);
+    }
+
+    /**
+     * Finds the nearest neighbor that can still be reached before its latest time,
+     * preferring the earlier arrival on equal distance.
+     *
+     * @param current     The current city name.
+     * @param currentTime The time we leave the current city.
+     * @return the nearest reachable city name, or null if there is none
+     */
     public String getNearestNeighbor(String current, int currentTime) {
-        return getNearestNeighbor(getNodeByName(current), currentTime).name;
+        CandidateLists lists = getCandidateLists();
+        int city = lists.indexOf(current);
+        if (city == -1) {
+            return null;
+        }
+
+        int nearest = -1;
+        int minDistance = Integer.MAX_VALUE;
+        int earliestArrivalTime = Integer.MAX_VALUE;
+        // Neighbors are sorted by distance, so stop after the first reachable distance
+        for (int entry = lists.from(city); entry < lists.to(city); entry++) {
+            if (lists.distance(entry) > minDistance) break;
+
+            int arrivalTime = currentTime + lists.travelTime(entry);
+            if (arrivalTime <= lists.latest(lists.target(entry)) && arrivalTime < earliestArrivalTime) {
+                nearest = lists.target(entry);
+                minDistance = lists.distance(entry);
+                earliestArrivalTime = arrivalTime;
+            }
+        }
+        return nearest == -1 ? null : lists.getName(nearest);
+    }
+
+    /**
+     * Reduces the compact graph with {@link TimeWindowReduction} for tours from the given start city.
+     * The reduction is built once per version of the graph and start city, so the name-based solvers share
+     * it and callers can read what it removed after a solve without reducing again.
+     *
+     * @param startCity The starting city name.
+     * @return the reduction, or null if the start city is unknown
+     * @throws IllegalArgumentException if there are more than {@link TimeWindowReduction#MAX_CITIES} cities
+     */
+    public TimeWindowReduction getReduction(String startCity) {
+        CompactGraph compactGraph = toCompactGraph();
+        int start = compactGraph.indexOf(startCity);
+        if (start == -1) {
+            return null;
+        }
+        return compactGraph.getReduction(start, SolverControl.unlimited());
+    }
+
+    /**
+     * Returns every city's neighbors sorted by distance as primitive arrays.
+     * The lists are built once per version of the graph and reused until the graph changes.
+     *
+     * @return the candidate lists of the current graph
+     */
+    public synchronized CandidateLists getCandidateLists() {
+        Derived data = derived();
+        if (data.candidateLists == null) {
+            data.candidateLists = buildCandidateLists();
+        }
+        return data.candidateLists;
+    }
+
+    /**
+     * @return the number of changes made to the graph so far, every add, update and clear method counts one
+     */
+    public long getVersion() {
+        return version;
     }
 
     // --------- Private Helper Methods ---------
 
+    // Called by every method that changes the graph, the derived data of the old version is dropped lazily
+    private void modified() {
+        version++;
+    }
+
+    // The derived data of the current version, callers hold the graph's lock or have not shared the graph yet
+    private Derived derived() {
+        if (derived.version != version) {
+            derived = new Derived(version);
+        }
+        return derived;
+    }
+
     /**
      * return a node by its name
      *
@@ -405,37 +697,51 @@ public class Graph {
     }
 
     /**
-     * @param current     The current Node
-     * @param currentTime And it's current time
-     * @return nearest city or neighbor city
+     * Builds the neighbor lists of every city sorted by distance, then by city id.
+     *
+     * @return the candidate lists
      */
-    private Node getNearestNeighbor(Node current, int currentTime) {
-        Node nearest = null;
-        int minDistance = Integer.MAX_VALUE;
-        int earliestArrivalTime = Integer.MAX_VALUE;  // To store the earliest arrival time in case of ties in distance
-
-        // Iterate over all neighbors to find the nearest one
-        for (Edge edge : current.neighbours.values()) {
-            int arrivalTime = currentTime + edge.travelTime;
-
-            // Ensure the arrival time is within the time window of the neighbor
-            if (edge.isEdgeWithinLatestTimeWindow(arrivalTime)) {
-                // First, check if this edge has a smaller distance
-                if (edge.distance < minDistance) {
-                    nearest = edge.to;  // Update the nearest node
-                    minDistance = edge.distance;  // Update the minimum distance
-                    earliestArrivalTime = arrivalTime;  // Update the earliest arrival time
-                }
-                // If distances are the same, prefer the one with the earlier arrival time
-                else if (edge.distance == minDistance && arrivalTime < earliestArrivalTime) {
-                    nearest = edge.to;  // Update the nearest node with earlier arrival time
-                    earliestArrivalTime = arrivalTime;  // Update the earliest arrival time
-                }
+    private CandidateLists buildCandidateLists() {
+        int n = citiesMap.size();
+        String[] names = new String[n];
+        int[] earliest = new int[n];
+        int[] latest = new int[n];
+        int[] offsets = new int[n + 1];
+        Map<Node, Integer> ids = new HashMap<>(n * 2);
+
+        int id = 0;
+        for (Node node : citiesMap.values()) {
+            names[id] = node.name;
+            earliest[id] = node.timeWindow.earliestTime;
+            latest[id] = node.timeWindow.latestTime;
+            offsets[id + 1] = offsets[id] + node.neighbours.size();
+            ids.put(node, id++);
+        }
+
+        int[] targets = new int[offsets[n]];
+        int[] distances = new int[offsets[n]];
+        int[] travelTimes = new int[offsets[n]];
+        int[] travelTimeTo = new int[n]; // Scratch row, travel time by target id
+        id = 0;
+        for (Node node : citiesMap.values()) {
+            // Sort (distance, target) pairs packed in a long, distances are never negative
+            long[] keys = new long[node.neighbours.size()];
+            int k = 0;
+            for (Edge edge : node.neighbours.values()) {
+                int target = ids.get(edge.to);
+                keys[k++] = ((long) edge.distance << 32) | target;
+                travelTimeTo[target] = edge.travelTime;
             }
-        }
+            Arrays.sort(keys);
 
-        // Return the nearest node, or null if no valid neighbor was found
-        return nearest;
+            for (int entry = offsets[id], i = 0; i < keys.length; entry++, i++) {
+                targets[entry] = (int) keys[i];
+                distances[entry] = (int) (keys[i] >>> 32);
+                travelTimes[entry] = travelTimeTo[targets[entry]];
+            }
+            id++;
+        }
+        return new CandidateLists(names, earliest, latest, offsets, targets, distances, travelTimes);
     }
 
     // --------- Update Methods ---------
@@ -458,6 +764,7 @@ public class Graph {
         Node city = citiesMap.remove(oldName); // Remove the old name
         city.name = newName; // Update the name
         citiesMap.put(newName, city); // Add with the new name
+        modified();
         return true;
     }
 
@@ -480,6 +787,7 @@ public class Graph {
         Node city = citiesMap.get(cityName);
         city.timeWindow.earliestTime = newEarliestTime;
         city.timeWindow.latestTime = newLatestTime;
+        modified();
         return true;
     }
 
@@ -515,6 +823,7 @@ public class Graph {
         edgeFromTo.travelTime = newTravelTime;
         edgeToFrom.distance = newDistance;
         edgeToFrom.travelTime = newTravelTime;
+        modified();
         return true;
     }
 
@@ -555,11 +864,28 @@ public class Graph {
         oldToCity.neighbours.remove(fromCity); // Remove reverse edge
         newToCity.addNeighbor(fromCity, newDistance, newTravelTime);
 
+        modified();
         return true;
     }
 
     // --------- Nested Classes ---------
 
+    // Everything computed from one version of the graph, each part built on first use
+    private static class Derived {
+        private final long version;
+        private int[][] adjacencyMatrix;
+        private int[][] travelTimeMatrix;
+        private int[][] timeWindowMatrix;
+        private int[] earliestTimes;
+        private int[] latestTimes;
+        private CompactGraph compactGraph;
+        private CandidateLists candidateLists;
+
+        private Derived(long version) {
+            this.version = version;
+        }
+    }
+
     // Node class representing a city in the graph
     private static class Node {
         private String name; // City name
@@ -572,6 +898,13 @@ public class Graph {
             this.neighbours = new HashMap<>();
         }
 
+        // Node whose neighbour map holds the given number of edges without resizing
+        private Node(String name, int earliest, int latest, int neighbourCount) {
+            this.name = name;
+            this.timeWindow = new TimeWindow(earliest, latest);
+            this.neighbours = new HashMap<>(neighbourCount * 4 / 3 + 1);
+        }
+
         private void addNeighbor(Node neighbour, int distance, int travelTime) {
             if (neighbour == null || distance < 0 || travelTime < 0) {
                 throw new IllegalArgumentException("Invalid neighbor or edge values.");
@@ -5,6 +5,7 @@ import java.awt.event.ActionListener;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 public class GraphVisualizer extends JPanel {
 
@@ -26,28 +27,21 @@ public class GraphVisualizer extends JPanel {
         JButton greedyButton = createStyledButton("Greedy");
         JButton divideAndConquerButton = createStyledButton("Divide & Conquer");
         JButton dpButton = createStyledButton("Dynamic Programming");
+        JButton antColonyButton = createStyledButton("Ant Colony");
 
         // Add action listeners for the buttons
-        bruteForceButton.addActionListener(e -> displayAlgorithmResult("Brute Force", BruteForce.solveTSPTW_BruteForce(graph, startCity)));
-        greedyButton.addActionListener(e -> displayAlgorithmResult("Greedy", Greedy.solveTSPTW_Greedy(graph, startCity)));
-        divideAndConquerButton.addActionListener(e -> displayAlgorithmResult("Divide & Conquer", DivideAndConquer.solveTSPTW_DivideAndConquer(graph, graph.getAllCities(), startCity)));
-        dpButton.addActionListener(e -> {
-            int[][] costMatrix = graph.toAdjacencyMatrix();
-            int[][] travelTimeMatrix = graph.toTravelTimeMatrix();
-            int[][] timeWindows = graph.toTimeWindowMatrix();
-            int[] result = DynamicProgramming.solveTSPTW_DP(costMatrix, travelTimeMatrix, timeWindows);
-            if (result[0] != -1) {
-                outputArea.append("\nDynamic Programming:\nMinimum cost: " + result[0] + "\tPath Time: " + result[1] + "\n");
-            } else {
-                outputArea.append("\nDynamic Programming:\nNo feasible solution exists within the given time windows.\n");
-            }
-        });
+        bruteForceButton.addActionListener(e -> displaySolverResult("Brute Force", true, () -> BruteForce.solveTSPTW_BruteForce(graph, startCity)));
+        greedyButton.addActionListener(e -> displaySolverResult("Greedy", true, () -> Greedy.solveTSPTW_Greedy(graph, startCity)));
+        divideAndConquerButton.addActionListener(e -> displaySolverResult("Divide & Conquer", true, () -> DivideAndConquer.solveTSPTW_DivideAndConquer(graph, graph.getAllCities(), startCity)));
+        dpButton.addActionListener(e -> displaySolverResult("Dynamic Programming", true, () -> DynamicProgramming.solveTSPTW_DP(graph, startCity)));
+        antColonyButton.addActionListener(e -> displaySolverResult("Ant Colony", false, () -> AntColony.solveTSPTW_AntColony(graph, startCity)));
 
         // Add buttons to the button panel
         buttonPanel.add(bruteForceButton);
         buttonPanel.add(greedyButton);
         buttonPanel.add(divideAndConquerButton);
         buttonPanel.add(dpButton);
+        buttonPanel.add(antColonyButton);
 
         // Create a text area for output
         outputArea = new JTextArea(8, 50);
@@ -223,6 +217,23 @@ public class GraphVisualizer extends JPanel {
         return button;
     }
 
+    // Runs a solver and shows its result, or why it cannot solve this graph, e.g. the DP above
+    // DynamicProgramming.MAX_DENSE_CITIES, instead of throwing on the event thread
+    private void displaySolverResult(String algorithmName, boolean reduced, Supplier<List<String>> solver) {
+        List<String> solution;
+        try {
+            solution = solver.get();
+        } catch (IllegalArgumentException e) {
+            outputArea.append("\n" + algorithmName + ":\n" + e.getMessage() + "\n");
+            return;
+        }
+        if (reduced) {
+            displayReducedResult(algorithmName, solution);
+        } else {
+            displayAlgorithmResult(algorithmName, solution);
+        }
+    }
+
     private void displayAlgorithmResult (String algorithmName, List < String > solution){
         outputArea.append("\n" + algorithmName + ":\n");
         if (solution == null || solution.isEmpty()) {
@@ -234,6 +245,18 @@ public class GraphVisualizer extends JPanel {
         }
     }
 
+    // Result of a solver that ran on the reduced graph, followed by what the reduction removed
+    private void displayReducedResult(String algorithmName, List<String> solution) {
+        displayAlgorithmResult(algorithmName, solution);
+        TimeWindowReduction reduction = graph.getNumberOfCities() <= TimeWindowReduction.MAX_CITIES
+                ? graph.getReduction(startCity) : null;
+        if (reduction != null) {
+            outputArea.append("Reduction: " + reduction.getArcsRemoved() + " arcs removed, "
+                    + reduction.getWindowsTightened() + " windows tightened, "
+                    + reduction.getTimeUnitsRemoved() + " time units removed\n");
+        }
+    }
+
     public static void createAndShowGUI(Graph graph, String startCity) {
         JFrame frame = new JFrame("Graph Visualization");
         GraphVisualizer panel = new GraphVisualizer(graph, startCity);
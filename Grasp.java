@@ -0,0 +1,236 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Parallel multi-start GRASP: every worker repeatedly builds a tour with
+ * {@link Greedy#solveTSPTW_RandomizedGreedy} and improves it with {@link LocalSearch}. The best tour is
+ * shared through a lock-free holder, and all workers stop at the deadline or as soon as a tour reaches
+ * the target cost. The first start of the first worker is the deterministic greedy tour.
+ * Starts are independent, so throughput grows with the number of workers.
+ */
+public class Grasp {
+
+    // Next city drawn from this many best greedy choices
+    public static final int DEFAULT_CANDIDATES = 3;
+    // Target cost meaning the search runs until the deadline
+    public static final int NO_TARGET = -1;
+    private static final long DEFAULT_SEED = 42;
+
+    /**
+     * Solves the TSPTW problem on every core of the common pool within a time budget.
+     *
+     * @param graph        The graph object containing cities and connections.
+     * @param startCity    The starting city name.
+     * @param budgetMillis Wall-clock time the search may use, measured from this call.
+     * @return The best path found as a list of city names, or null if no start found a valid path.
+     */
+    public static List<String> solveTSPTW_GRASP(Graph graph, String startCity, long budgetMillis) {
+        long deadlineNanos = System.nanoTime() + budgetMillis * 1_000_000L;
+        CompactGraph compactGraph = graph.toCompactGraph();
+        int start = compactGraph.indexOf(startCity);
+        if (start == -1) {
+            return null; // Unknown start city
+        }
+        Result result = solveTSPTW_GRASP(compactGraph, start, DEFAULT_CANDIDATES, NO_TARGET, deadlineNanos,
+                DEFAULT_SEED, ForkJoinPool.commonPool());
+        return compactGraph.toCityNames(result.getTour());
+    }
+
+    /**
+     * Runs one GRASP worker per thread of the pool until the deadline or the target.
+     *
+     * @param graph         The compact graph containing cities and connections.
+     * @param startCity     The starting city id.
+     * @param candidates    Number of best greedy choices the next city is drawn from.
+     * @param targetCost    Stop once a tour costs at most this much, or {@link #NO_TARGET}.
+     * @param deadlineNanos {@link System#nanoTime()} value at which the best tour is returned.
+     * @param seed          Seed of the workers' random sources, worker i uses its own stream.
+     * @param pool          The pool running the workers.
+     * @return the best tour with the search statistics, the tour is null if no start found a valid tour
+     */
+    public static Result solveTSPTW_GRASP(CompactGraph graph, int startCity, int candidates, int targetCost,
+                                          long deadlineNanos, long seed, ForkJoinPool pool) {
+        return solveTSPTW_GRASP(graph, startCity, candidates, targetCost, new SolverControl(deadlineNanos), seed, pool);
+    }
+
+    /**
+     * Same as {@link #solveTSPTW_GRASP(CompactGraph, int, int, int, long, long, ForkJoinPool)}, the workers stop
+     * when the control says so or at the target.
+     */
+    public static Result solveTSPTW_GRASP(CompactGraph graph, int startCity, int candidates, int targetCost,
+                                          SolverControl control, long seed, ForkJoinPool pool) {
+        if (candidates < 1) {
+            throw new IllegalArgumentException("At least one candidate is needed.");
+        }
+        long startNanos = System.nanoTime();
+        Shared shared = new Shared(graph, startCity, candidates, targetCost, control);
+
+        int workers = pool.getParallelism();
+        List<Worker> tasks = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            tasks.add(new Worker(shared, new Random(seed + i * 0x9E3779B97F4A7C15L), i == 0));
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+
+        Incumbent best = shared.best.get();
+        return new Result(best, shared.starts.sum(), workers, System.nanoTime() - startNanos);
+    }
+
+    // An immutable best tour, replaced as a whole so readers never see a half-written one
+    private static class Incumbent {
+        private final int[] tour;
+        private final int cost;
+        private final int time;
+
+        private Incumbent(int[] tour, int cost, int time) {
+            this.tour = tour;
+            this.cost = cost;
+            this.time = time;
+        }
+
+        private boolean isBetterThan(Incumbent other) {
+            return other == null || cost < other.cost || (cost == other.cost && time < other.time);
+        }
+    }
+
+    // State read by all workers
+    private static class Shared {
+        private final CompactGraph graph;
+        private final int startCity;
+        private final int candidates;
+        private final int targetCost;
+        private final SolverControl control;
+        private final AtomicReference<Incumbent> best = new AtomicReference<>();
+        private final AtomicBoolean targetReached = new AtomicBoolean();
+        private final LongAdder starts = new LongAdder();
+
+        private Shared(CompactGraph graph, int startCity, int candidates, int targetCost, SolverControl control) {
+            this.graph = graph;
+            this.startCity = startCity;
+            this.candidates = candidates;
+            this.targetCost = targetCost;
+            this.control = control;
+        }
+
+        private boolean isDone() {
+            return targetReached.get() || control.shouldStop();
+        }
+
+        // Replaces the incumbent if the tour is better, retrying when another worker got there first
+        private void offer(Incumbent candidate) {
+            Incumbent current = best.get();
+            while (candidate.isBetterThan(current)) {
+                if (best.compareAndSet(current, candidate)) {
+                    if (targetCost != NO_TARGET && candidate.cost <= targetCost) {
+                        targetReached.set(true);
+                    }
+                    return;
+                }
+                current = best.get();
+            }
+        }
+    }
+
+    private static class Worker extends RecursiveAction {
+        private final Shared shared;
+        private final Random random;
+        private boolean greedyFirst; // Starts from the deterministic greedy tour, so GRASP never does worse
+
+        private Worker(Shared shared, Random random, boolean greedyFirst) {
+            this.shared = shared;
+            this.random = random;
+            this.greedyFirst = greedyFirst;
+        }
+
+        @Override
+        protected void compute() {
+            CompactGraph graph = shared.graph;
+            while (!shared.isDone()) {
+                int candidates = greedyFirst ? 1 : shared.candidates;
+                greedyFirst = false;
+                int[] tour = Greedy.solveTSPTW_RandomizedGreedy(graph, shared.startCity, candidates, random);
+                shared.starts.increment();
+                if (tour == null) continue; // This construction got stuck
+
+                tour = LocalSearch.improve(graph, tour, 0, tour.length, shared.control);
+                int[] value = graph.calculateFeasiblePathCost(tour);
+                shared.offer(new Incumbent(tour, value[0], value[1]));
+            }
+        }
+    }
+
+    /**
+     * Best tour of a run and its throughput.
+     */
+    public static class Result {
+        private final Incumbent best;
+        private final long starts;
+        private final int workers;
+        private final long elapsedNanos;
+
+        private Result(Incumbent best, long starts, int workers, long elapsedNanos) {
+            this.best = best;
+            this.starts = starts;
+            this.workers = workers;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return the best tour as city ids, or null if no start found a valid tour
+         */
+        public int[] getTour() {
+            return best == null ? null : best.tour;
+        }
+
+        /**
+         * @return the cost of the best tour, or -1 if there is none
+         */
+        public int getCost() {
+            return best == null ? -1 : best.cost;
+        }
+
+        /**
+         * @return the return time of the best tour, or -1 if there is none
+         */
+        public int getTime() {
+            return best == null ? -1 : best.time;
+        }
+
+        /**
+         * @return the number of constructions started by all workers, including the ones that got stuck
+         */
+        public long getStarts() {
+            return starts;
+        }
+
+        public int getWorkers() {
+            return workers;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getStartsPerSecond() {
+            return elapsedNanos == 0 ? 0 : starts * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "GRASP {cost=" + (best == null ? "none" : best.cost) + ", starts=" + starts
+                    + ", workers=" + workers + ", startsPerSecond=" + Math.round(getStartsPerSecond())
+                    + ", elapsedMillis=" + elapsedNanos / 1_000_000 + "}";
+        }
+    }
+}
@@ -3,77 +3,222 @@ import java.util.*;
 public class Greedy {
 
     /**
-     * Solve TSPTW using Greedy algorithm
+     * Solve TSPTW using Greedy algorithm. Up to {@link TimeWindowReduction#MAX_CITIES} cities the greedy
+     * choices are made on the reduced graph, whose reduction stays cached on the graph with what it removed,
+     * so the tour never walks into an arc that no feasible tour can use. Larger graphs are walked through
+     * their candidate lists.
      *
      * @param graph     The graph representing the TSPTW problem
      * @param startCity The starting node
      * @return A list of node names representing the path
      */
     public static List<String> solveTSPTW_Greedy(Graph graph, String startCity) {
-        List<String> path = new ArrayList<>();
-        Set<String> visited = new HashSet<>();
-        String currentCity = startCity;
+        if (graph.getNumberOfCities() <= TimeWindowReduction.MAX_CITIES) {
+            TimeWindowReduction reduction = graph.getReduction(startCity);
+            if (reduction == null || reduction.isInfeasible()) {
+                return null; // Unknown start city or no feasible tour
+            }
+            CompactGraph reduced = reduction.getGraph();
+            return reduced.toCityNames(solveTSPTW_Greedy(reduced, reduced.indexOf(startCity)));
+        }
+
+        // Neighbors sorted by distance, cached on the graph between solves
+        CandidateLists lists = graph.getCandidateLists();
+        int start = lists.indexOf(startCity);
+        if (start == -1) {
+            return null; // Unknown start city
+        }
+
+        int n = lists.size();
+        List<String> path = new ArrayList<>(n + 1);
+        BitSet visited = new BitSet(n);
+        int currentCity = start;
         int currentTime = 0;  // Start time is 0
-        int totalDistance = 0;
 
         // Add the start node to the path and mark it visited
-        path.add(currentCity);
-        visited.add(currentCity);
+        path.add(startCity);
+        visited.set(start);
 
         // While there are unvisited cities
-        while (visited.size() < graph.getNumberOfCities()) {
-            String nextCity = null;
+        for (int step = 1; step < n; step++) {
+            int nextCity = -1;
             int minDistance = Integer.MAX_VALUE;
             int bestArrivalTime = Integer.MAX_VALUE;
 
-            // Check all cities that are not visited
-            for (String city : graph.getAllCities()) {
-                if (!visited.contains(city) && graph.isEdgeValid(currentCity, city)) {
-                    int validArrivalTime = graph.getValidArrivalTime(currentCity, city, currentTime);
-
-                    if (validArrivalTime != -1) {
-                        int travelDistance = graph.getEdgeTravelDistance(currentCity, city);
-
-                        // Select the next city based on smallest distance and smallest valid arrival time in case of a tie
-                        if (travelDistance < minDistance ||
-                                (travelDistance == minDistance && validArrivalTime < bestArrivalTime)) {
-                            minDistance = travelDistance;
-                            nextCity = city;
-                            bestArrivalTime = validArrivalTime;
-                        }
-                    }
+            // The first feasible unvisited neighbor is the nearest, only its equal-distance peers can still win
+            for (int entry = lists.from(currentCity); entry < lists.to(currentCity); entry++) {
+                if (lists.distance(entry) > minDistance) break;
+
+                int city = lists.target(entry);
+                if (visited.get(city)) continue;
+
+                int arrivalTime = currentTime + lists.travelTime(entry);
+                if (arrivalTime > lists.latest(city)) continue; // Latest time window violated
+                int validArrivalTime = Math.max(arrivalTime, lists.earliest(city));
+
+                // Select the next city based on smallest distance and smallest valid arrival time in case of a tie
+                if (validArrivalTime < bestArrivalTime) {
+                    minDistance = lists.distance(entry);
+                    nextCity = city;
+                    bestArrivalTime = validArrivalTime;
                 }
             }
 
             // If no valid next city is found
-            if (nextCity == null) {
+            if (nextCity == -1) {
                 return null;
             }
 
-            // Update path, visited cities, total distance, and current city/time
-            visited.add(nextCity);
-            path.add(nextCity);
-            totalDistance += minDistance;
+            // Update path, visited cities and current city/time
+            visited.set(nextCity);
+            path.add(lists.getName(nextCity));
             currentCity = nextCity;
             currentTime = bestArrivalTime;
         }
 
         // Attempt to return to the start node
-        if (graph.isEdgeValid(currentCity, startCity)) {
-            int returnDistance = graph.getEdgeTravelDistance(currentCity, startCity);
-            int returnArrivalTime = graph.getValidArrivalTime(currentCity, startCity, currentTime);
-
-            if (returnArrivalTime != -1) {
-                path.add(startCity);
-                totalDistance += returnDistance;
-            } else {
+        int returnEntry = lists.findEntry(currentCity, start);
+        if (returnEntry == -1 || currentTime + lists.travelTime(returnEntry) > lists.latest(start)) {
+            return null;
+        }
+        path.add(startCity);
+        return path;
+    }
+
+    /**
+     * Solve TSPTW using Greedy algorithm on a compact graph
+     *
+     * @param graph     The compact graph representing the TSPTW problem
+     * @param startCity The starting city id
+     * @return The tour as city ids, or null if the greedy choice gets stuck
+     */
+    public static int[] solveTSPTW_Greedy(CompactGraph graph, int startCity) {
+        int n = graph.size();
+        int[] tour = new int[n + 1];
+        boolean[] visited = new boolean[n];
+        int currentCity = startCity;
+        int currentTime = 0;  // Start time is 0
+
+        // Add the start city to the tour and mark it visited
+        tour[0] = startCity;
+        visited[startCity] = true;
+
+        for (int step = 1; step < n; step++) {
+            int nextCity = -1;
+            int minDistance = Integer.MAX_VALUE;
+            int bestArrivalTime = Integer.MAX_VALUE;
+
+            // Check all cities that are not visited
+            for (int city = 0; city < n; city++) {
+                if (visited[city]) continue;
+
+                int validArrivalTime = graph.getValidArrivalTime(currentCity, city, currentTime);
+                if (validArrivalTime != -1) {
+                    int travelDistance = graph.distance(currentCity, city);
+
+                    // Select the next city based on smallest distance and smallest valid arrival time in case of a tie
+                    if (travelDistance < minDistance ||
+                            (travelDistance == minDistance && validArrivalTime < bestArrivalTime)) {
+                        minDistance = travelDistance;
+                        nextCity = city;
+                        bestArrivalTime = validArrivalTime;
+                    }
+                }
+            }
+
+            // If no valid next city is found
+            if (nextCity == -1) {
                 return null;
             }
-        } else {
+
+            visited[nextCity] = true;
+            tour[step] = nextCity;
+            currentCity = nextCity;
+            currentTime = bestArrivalTime;
+        }
+
+        // Attempt to return to the start city
+        if (graph.getValidArrivalTime(currentCity, startCity, currentTime) == -1) {
             return null;
         }
+        tour[n] = startCity;
+        return tour;
+    }
 
-        return path;
+    /**
+     * Randomized greedy construction for multi-start search. At every step the feasible unvisited cities
+     * are ranked with the same rule as {@link #solveTSPTW_Greedy(CompactGraph, int)} (smallest distance,
+     * then smallest valid arrival time) and the next city is drawn uniformly from the best 'candidates'.
+     * With one candidate this is the deterministic greedy tour.
+     *
+     * @param graph      The compact graph representing the TSPTW problem
+     * @param startCity  The starting city id
+     * @param candidates Number of best cities the next city is drawn from, at least 1
+     * @param random     Random source, not shared between threads
+     * @return The tour as city ids, or null if the construction gets stuck
+     */
+    public static int[] solveTSPTW_RandomizedGreedy(CompactGraph graph, int startCity, int candidates, Random random) {
+        int n = graph.size();
+        int[] tour = new int[n + 1];
+        boolean[] visited = new boolean[n];
+        int currentCity = startCity;
+        int currentTime = 0;  // Start time is 0
+
+        // The best candidates so far, sorted by distance then arrival time
+        int[] bestCities = new int[candidates];
+        int[] bestDistances = new int[candidates];
+        int[] bestArrivalTimes = new int[candidates];
+
+        tour[0] = startCity;
+        visited[startCity] = true;
+
+        for (int step = 1; step < n; step++) {
+            int found = 0;
+            for (int city = 0; city < n; city++) {
+                if (visited[city]) continue;
+
+                int validArrivalTime = graph.getValidArrivalTime(currentCity, city, currentTime);
+                if (validArrivalTime == -1) continue;
+                int travelDistance = graph.distance(currentCity, city);
+
+                // Insertion into the sorted candidates, equal cities keep their scan order
+                int position = found;
+                while (position > 0 && (travelDistance < bestDistances[position - 1]
+                        || (travelDistance == bestDistances[position - 1]
+                        && validArrivalTime < bestArrivalTimes[position - 1]))) {
+                    position--;
+                }
+                if (position == candidates) continue;
+                int last = Math.min(found, candidates - 1);
+                for (int k = last; k > position; k--) {
+                    bestCities[k] = bestCities[k - 1];
+                    bestDistances[k] = bestDistances[k - 1];
+                    bestArrivalTimes[k] = bestArrivalTimes[k - 1];
+                }
+                bestCities[position] = city;
+                bestDistances[position] = travelDistance;
+                bestArrivalTimes[position] = validArrivalTime;
+                found = last + 1;
+            }
+
+            // If no valid next city is found
+            if (found == 0) {
+                return null;
+            }
+
+            int chosen = found == 1 ? 0 : random.nextInt(found);
+            currentCity = bestCities[chosen];
+            currentTime = bestArrivalTimes[chosen];
+            visited[currentCity] = true;
+            tour[step] = currentCity;
+        }
+
+        // Attempt to return to the start city
+        if (graph.getValidArrivalTime(currentCity, startCity, currentTime) == -1) {
+            return null;
+        }
+        tour[n] = startCity;
+        return tour;
     }
 
 }
@@ -0,0 +1,184 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary instance file for instances whose matrices do not fit on the heap. The matrices are memory-mapped
+ * by {@link #open(Path)}, so opening reads only the O(n) city data and the operating system pages the
+ * matrices in on demand, sharing its page cache between every JVM that opens the same file.
+ * <p>
+ * Layout, all numbers little-endian:
+ * <pre>
+ * offset 0   int   magic "TSPW"
+ *        4   int   format version, 1
+ *        8   int   number of cities n
+ *        12  int   reserved, 0
+ *        16  long  offset of the distance block
+ *        24  long  offset of the travel time block
+ *        32  long  offset of the name block
+ *        40  int[n] earliest times, then int[n] latest times
+ * distance block     n*n ints, row-major, -1 where two cities are not connected
+ * travel time block  n*n ints, row-major
+ * name block         per city an int byte length followed by the UTF-8 name
+ * </pre>
+ * The blocks start on 8-byte boundaries.
+ */
+public final class InstanceFile {
+
+    // "TSPW" read as a little-endian int
+    private static final int MAGIC = 0x57505354;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 40;
+
+    private InstanceFile() {
+    }
+
+    /**
+     * Writes a graph in the instance format.
+     *
+     * @param graph The graph object containing cities and connections.
+     * @param file  The file to create or replace.
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Graph graph, Path file) throws IOException {
+        write(graph.toCompactGraph(), file);
+    }
+
+    /**
+     * Writes a compact graph in the instance format, one row at a time, so a mapped graph can be copied
+     * without holding its matrices on the heap.
+     *
+     * @param graph The compact graph.
+     * @param file  The file to create or replace.
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(CompactGraph graph, Path file) throws IOException {
+        int n = graph.size();
+        long distanceOffset = align(HEADER_BYTES + 8L * n);
+        long travelTimeOffset = distanceOffset + 4L * n * n;
+        long nameOffset = align(travelTimeOffset + 4L * n * n);
+
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+            ByteBuffer header = ByteBuffer.allocate((int) distanceOffset).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(n).putInt(0);
+            header.putLong(distanceOffset).putLong(travelTimeOffset).putLong(nameOffset);
+            for (int city = 0; city < n; city++) {
+                header.putInt(graph.earliest(city));
+            }
+            for (int city = 0; city < n; city++) {
+                header.putInt(graph.latest(city));
+            }
+            out.write(header.array());
+
+            writeMatrix(out, graph.getDistanceMatrix());
+            writeMatrix(out, graph.getTravelTimeMatrix());
+            out.write(new byte[(int) (nameOffset - travelTimeOffset - 4L * n * n)]);
+
+            ByteBuffer length = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            for (int city = 0; city < n; city++) {
+                byte[] name = graph.getName(city).getBytes(StandardCharsets.UTF_8);
+                length.clear();
+                out.write(length.putInt(name.length).array());
+                out.write(name);
+            }
+        }
+    }
+
+    // Writes the rows of a matrix in order, through one reused row buffer
+    private static void writeMatrix(OutputStream out, ArcMatrix matrix) throws IOException {
+        int n = matrix.size();
+        int[] row = new int[n];
+        ByteBuffer bytes = ByteBuffer.allocate(4 * n).order(ByteOrder.LITTLE_ENDIAN);
+        for (int from = 0; from < n; from++) {
+            matrix.getRow(from, row, 0);
+            bytes.clear();
+            bytes.asIntBuffer().put(row);
+            out.write(bytes.array());
+        }
+    }
+
+    /**
+     * Opens an instance file. The city names and time windows are read, the matrices are mapped and read
+     * only when a solver touches them.
+     *
+     * @param file The instance file.
+     * @return a compact graph backed by the file, it stays valid after the file is closed
+     * @throws IOException if the file cannot be read or is not an instance file
+     */
+    public static CompactGraph open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = read(channel, 0, HEADER_BYTES);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not an instance file: " + file);
+            }
+            int version = header.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported instance file version " + version + ": " + file);
+            }
+            int n = header.getInt();
+            header.getInt(); // Reserved
+            long distanceOffset = header.getLong();
+            long travelTimeOffset = header.getLong();
+            long nameOffset = header.getLong();
+            if (n < 0 || nameOffset > channel.size()) {
+                throw new IOException("Corrupt instance file header: " + file);
+            }
+
+            ByteBuffer windows = read(channel, HEADER_BYTES, 8 * n);
+            int[] earliest = new int[n];
+            int[] latest = new int[n];
+            windows.asIntBuffer().get(earliest).get(latest);
+
+            ByteBuffer nameBlock = read(channel, nameOffset, (int) (channel.size() - nameOffset));
+            String[] names = new String[n];
+            for (int city = 0; city < n; city++) {
+                byte[] name = new byte[nameBlock.getInt()];
+                nameBlock.get(name);
+                names[city] = new String(name, StandardCharsets.UTF_8);
+            }
+
+            ArcMatrix distance = new MappedArcMatrix(channel, distanceOffset, n);
+            ArcMatrix travelTime = new MappedArcMatrix(channel, travelTimeOffset, n);
+            return new CompactGraph(names, distance, travelTime, earliest, latest);
+        }
+    }
+
+    /**
+     * @param file Any file.
+     * @return true if the file starts like an instance file, false if it does not or is too short
+     * @throws IOException if the file cannot be read
+     */
+    public static boolean isInstanceFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (magic.hasRemaining()) {
+                if (channel.read(magic) < 0) {
+                    return false;
+                }
+            }
+            return magic.flip().getInt() == MAGIC;
+        }
+    }
+
+    // Reads length bytes at a position into a little-endian buffer, ready to read
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of instance file.");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+}
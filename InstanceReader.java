@@ -0,0 +1,392 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Loads the text formats of the common TSPTW benchmark sets into a {@link CompactGraph}, the first city of
+ * the file being city 0 and the start of the tour.
+ * <ul>
+ * <li>Coordinate files of the Solomon, Dumas and Gendreau sets: one row per customer with its number,
+ * x, y, demand, ready time, due date and service time. Header and comment lines are skipped, a Dumas-style
+ * closing row with customer number 999 and nothing else ends the list. Distances are the Euclidean
+ * distances truncated to int and the travel time of an arc adds the service time of the city it leaves;
+ * both are computed on demand by an {@link EuclideanArcMatrix}, so nothing of size n*n is built.</li>
+ * <li>Explicit matrix files as in the Lopez-Ibanez and Blum collection: the number of cities n, the n*n
+ * travel time matrix and n lines of ready time and due date. The matrix is both distance and travel time.</li>
+ * </ul>
+ * The file is read through one reused NIO buffer and numbers are parsed from the bytes, so reading creates
+ * no objects per token. Decimal times are truncated like the distances. Cities are named by their customer
+ * number in coordinate files and 1..n in matrix files.
+ */
+public final class InstanceReader {
+
+    // Columns of a coordinate row: number, x, y, demand, ready time, due date, service time
+    private static final int COORDINATE_COLUMNS = 7;
+    // Customer number of the row that closes the customer list of Dumas-style files
+    private static final int END_OF_CUSTOMERS = 999;
+
+    private InstanceReader() {
+    }
+
+    /**
+     * Reads a coordinate or explicit matrix file, told apart by the first line made only of numbers:
+     * a single number is the city count of a matrix file, a full coordinate row starts a coordinate file.
+     *
+     * @param file The instance file.
+     * @return the instance, city 0 is the first city of the file
+     * @throws IOException if the file cannot be read, is in neither format or has an invalid time window
+     */
+    public static CompactGraph read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Scanner scanner = new Scanner(channel);
+            double[] values = new double[COORDINATE_COLUMNS];
+            int count;
+            do {
+                count = scanner.readLine(values);
+            } while (count != Scanner.END_OF_FILE && count != 1 && count != COORDINATE_COLUMNS);
+
+            if (count == 1) {
+                return readMatrix(scanner, values[0]);
+            }
+            if (count == COORDINATE_COLUMNS) {
+                return readCoordinates(scanner, values);
+            }
+            throw new IOException("No coordinate row or city count found: " + file);
+        }
+    }
+
+    /**
+     * Reads a Solomon, Dumas or Gendreau style coordinate file.
+     *
+     * @param file The instance file.
+     * @return the instance, city 0 is the first customer row, the depot
+     * @throws IOException if the file cannot be read or a customer row is malformed or has an invalid time window
+     */
+    public static CompactGraph readCoordinates(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Scanner scanner = new Scanner(channel);
+            double[] values = new double[COORDINATE_COLUMNS];
+            int count;
+            do {
+                count = scanner.readLine(values);
+            } while (count != Scanner.END_OF_FILE && count != COORDINATE_COLUMNS);
+
+            if (count == Scanner.END_OF_FILE) {
+                throw new IOException("No customer rows found: " + file);
+            }
+            return readCoordinates(scanner, values);
+        }
+    }
+
+    /**
+     * Reads an explicit matrix file: n, the n*n travel time matrix, then the n time windows.
+     *
+     * @param file The instance file.
+     * @return the instance, city 0 is the first row of the matrix
+     * @throws IOException if the file cannot be read, ends early or has an invalid time window
+     */
+    public static CompactGraph readMatrix(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Scanner scanner = new Scanner(channel);
+            return readMatrix(scanner, scanner.nextNumber());
+        }
+    }
+
+    // Reads the customer rows from the first one, already in values, to the end of the list
+    private static CompactGraph readCoordinates(Scanner scanner, double[] values) throws IOException {
+        int capacity = 256;
+        String[] names = new String[capacity];
+        double[] x = new double[capacity];
+        double[] y = new double[capacity];
+        int[] earliest = new int[capacity];
+        int[] latest = new int[capacity];
+        int[] serviceTime = new int[capacity];
+        boolean anyServiceTime = false;
+        Set<String> seen = new HashSet<>();
+
+        int n = 0;
+        int count = COORDINATE_COLUMNS;
+        while (count != Scanner.END_OF_FILE) {
+            if (count == COORDINATE_COLUMNS) {
+                if (isEndOfCustomers(values)) {
+                    break;
+                }
+                if (n == capacity) {
+                    capacity *= 2;
+                    names = Arrays.copyOf(names, capacity);
+                    x = Arrays.copyOf(x, capacity);
+                    y = Arrays.copyOf(y, capacity);
+                    earliest = Arrays.copyOf(earliest, capacity);
+                    latest = Arrays.copyOf(latest, capacity);
+                    serviceTime = Arrays.copyOf(serviceTime, capacity);
+                }
+                names[n] = formatNumber(values[0]);
+                if (!seen.add(names[n])) {
+                    throw new IOException("Duplicate customer " + names[n] + " on line " + scanner.getLastLine());
+                }
+                x[n] = values[1];
+                y[n] = values[2];
+                earliest[n] = (int) values[4];
+                latest[n] = (int) values[5];
+                checkTimeWindow(earliest[n], latest[n],
+                        "of customer " + names[n] + " on line " + scanner.getLastLine());
+                serviceTime[n] = (int) values[6];
+                anyServiceTime |= serviceTime[n] != 0;
+                n++;
+            } else if (count > 0) {
+                throw new IOException("Expected " + COORDINATE_COLUMNS + " numbers on line " + scanner.getLastLine());
+            }
+            count = scanner.readLine(values);
+        }
+
+        x = Arrays.copyOf(x, n);
+        y = Arrays.copyOf(y, n);
+        ArcMatrix distance = new EuclideanArcMatrix(x, y, null);
+        // Without service times the travel times are the distances
+        ArcMatrix travelTime = anyServiceTime ? new EuclideanArcMatrix(x, y, Arrays.copyOf(serviceTime, n)) : distance;
+        return new CompactGraph(Arrays.copyOf(names, n), distance, travelTime,
+                Arrays.copyOf(earliest, n), Arrays.copyOf(latest, n));
+    }
+
+    // The Dumas closing row is customer 999 with all other columns zero
+    private static boolean isEndOfCustomers(double[] values) {
+        if (values[0] != END_OF_CUSTOMERS) {
+            return false;
+        }
+        for (int column = 1; column < COORDINATE_COLUMNS; column++) {
+            if (values[column] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Reads the matrix and time windows that follow the city count
+    private static CompactGraph readMatrix(Scanner scanner, double count) throws IOException {
+        int n = (int) count;
+        if (n != count || n < 0 || (long) n * n > Integer.MAX_VALUE - 8) {
+            throw new IOException("Invalid number of cities " + formatNumber(count));
+        }
+        int[] matrix = new int[n * n];
+        for (int from = 0; from < n; from++) {
+            for (int to = 0; to < n; to++) {
+                int value = (int) scanner.nextNumber();
+                // The diagonal holds zeros in the files, and a city is not connected to itself
+                matrix[from * n + to] = from == to || value < 0 ? CompactGraph.NO_EDGE : value;
+            }
+        }
+        String[] names = new String[n];
+        int[] earliest = new int[n];
+        int[] latest = new int[n];
+        for (int city = 0; city < n; city++) {
+            names[city] = Integer.toString(city + 1);
+            earliest[city] = (int) scanner.nextNumber();
+            latest[city] = (int) scanner.nextNumber();
+            checkTimeWindow(earliest[city], latest[city], "of city " + names[city]);
+        }
+
+        ArcMatrix travelTime = PackedSymmetricMatrix.of(n, matrix);
+        return new CompactGraph(names, travelTime, travelTime, earliest, latest);
+    }
+
+    // Solvers expect every window to start at 0 or later and not to close before it opens
+    private static void checkTimeWindow(int earliest, int latest, String row) throws IOException {
+        if (earliest < 0 || earliest > latest) {
+            throw new IOException("Invalid time window [" + earliest + ", " + latest + "] " + row);
+        }
+    }
+
+    // Customer numbers are integers in every known file, keep a fraction if one is not
+    private static String formatNumber(double value) {
+        return value == (long) value ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    /**
+     * Reads numbers straight from the bytes of a channel through one reused buffer.
+     * Tokens are separated by spaces, tabs, commas and line breaks.
+     */
+    private static final class Scanner {
+        // readLine result at the end of the file
+        static final int END_OF_FILE = -1;
+        // readLine result for a line holding something other than numbers
+        static final int NOT_NUMERIC = -2;
+
+        private static final int BUFFER_BYTES = 1 << 16;
+        private static final int EOF = -1;
+        // Largest mantissa that can take one more digit without overflow
+        private static final long MAX_MANTISSA = (Long.MAX_VALUE - 9) / 10;
+
+        private final ReadableByteChannel channel;
+        private final byte[] bytes = new byte[BUFFER_BYTES];
+        private final ByteBuffer buffer = ByteBuffer.wrap(bytes); // Reads from the channel into bytes
+        private int position; // Next byte to parse
+        private int limit; // End of the bytes read
+        private int line = 1; // Line of the next byte, for error messages
+        private int lastLine; // Line returned by the last readLine
+        private double value; // Number parsed by the last parseNumber
+        private boolean valid; // Whether the last parseNumber found a number
+
+        Scanner(ReadableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        // Line returned by the last readLine
+        int getLastLine() {
+            return lastLine;
+        }
+
+        /**
+         * Reads one line. Values beyond the array are counted but not stored.
+         *
+         * @param values Receives the numbers of the line.
+         * @return the number of values on the line, {@link #NOT_NUMERIC} if it holds anything else, or
+         * {@link #END_OF_FILE}
+         */
+        int readLine(double[] values) throws IOException {
+            lastLine = line;
+            int c = read();
+            if (c == EOF) {
+                return END_OF_FILE;
+            }
+            int count = 0;
+            boolean numeric = true;
+            while (c != '\n' && c != EOF) {
+                if (isSeparator(c)) {
+                    c = read();
+                } else if (numeric) {
+                    c = parseNumber(c);
+                    if (valid) {
+                        if (count < values.length) {
+                            values[count] = value;
+                        }
+                        count++;
+                    } else {
+                        numeric = false;
+                    }
+                } else {
+                    c = read();
+                }
+            }
+            if (c == '\n') {
+                line++;
+            }
+            return numeric ? count : NOT_NUMERIC;
+        }
+
+        /**
+         * Reads the next number, across line breaks.
+         *
+         * @throws IOException if the file ends first or the next token is not a number
+         */
+        double nextNumber() throws IOException {
+            int c = read();
+            while (isSeparator(c) || c == '\n') {
+                if (c == '\n') {
+                    line++;
+                }
+                c = read();
+            }
+            if (c == EOF) {
+                throw new IOException("Unexpected end of file on line " + line);
+            }
+            c = parseNumber(c);
+            if (!valid) {
+                throw new IOException("Expected a number on line " + line);
+            }
+            if (c == '\n') {
+                line++;
+            }
+            return value;
+        }
+
+        /**
+         * Parses the token that starts with byte c into value, and valid if it is a number.
+         *
+         * @return the byte after the token, a separator, a line break or {@link #EOF}
+         */
+        private int parseNumber(int c) throws IOException {
+            boolean negative = c == '-';
+            if (c == '-' || c == '+') {
+                c = read();
+            }
+            long mantissa = 0;
+            int exponent = 0;
+            int digits = 0;
+            for (; c >= '0' && c <= '9'; c = read(), digits++) {
+                if (mantissa <= MAX_MANTISSA) {
+                    mantissa = mantissa * 10 + (c - '0');
+                } else {
+                    exponent++; // Digits beyond a long only scale the value
+                }
+            }
+            if (c == '.') {
+                for (c = read(); c >= '0' && c <= '9'; c = read(), digits++) {
+                    if (mantissa <= MAX_MANTISSA) {
+                        mantissa = mantissa * 10 + (c - '0');
+                        exponent--;
+                    }
+                }
+            }
+            boolean exponentValid = true;
+            if (digits > 0 && (c == 'e' || c == 'E')) {
+                c = read();
+                boolean negativeExponent = c == '-';
+                if (c == '-' || c == '+') {
+                    c = read();
+                }
+                int power = 0;
+                int powerDigits = 0;
+                for (; c >= '0' && c <= '9'; c = read(), powerDigits++) {
+                    power = Math.min(power * 10 + (c - '0'), 9999);
+                }
+                exponentValid = powerDigits > 0;
+                exponent += negativeExponent ? -power : power;
+            }
+
+            valid = digits > 0 && exponentValid && (isSeparator(c) || c == '\n' || c == EOF);
+            if (!valid) {
+                while (!isSeparator(c) && c != '\n' && c != EOF) {
+                    c = read(); // Skip the rest of the word
+                }
+                return c;
+            }
+            // Dividing by an exact power of ten rounds correctly for the decimals of instance files
+            if (exponent == 0) {
+                value = mantissa;
+            } else {
+                value = exponent > 0 ? mantissa * Math.pow(10, exponent) : mantissa / Math.pow(10, -exponent);
+            }
+            if (negative) {
+                value = -value;
+            }
+            return c;
+        }
+
+        private static boolean isSeparator(int c) {
+            return c == ' ' || c == '\t' || c == '\r' || c == ',';
+        }
+
+        // Next byte of the channel, or EOF
+        private int read() throws IOException {
+            if (position == limit) {
+                buffer.clear();
+                int count;
+                do {
+                    count = channel.read(buffer);
+                } while (count == 0);
+                if (count < 0) {
+                    return EOF;
+                }
+                position = 0;
+                limit = count;
+            }
+            return bytes[position++] & 0xFF;
+        }
+    }
+}
@@ -0,0 +1,446 @@
+import java.util.List;
+
+/**
+ * Post-optimization of a feasible tour with 2-opt, Or-opt and swap moves.
+ * <p>
+ * Every move is checked in O(1) with segment concatenation: for each prefix and suffix of the tour we keep
+ * the travel time, the earliest end and the latest start of the segment, and the segments between the
+ * move's cut points are extended one city at a time while the neighborhood is scanned.
+ * No move ever walks the whole path, and no move reaches more than {@link #MAX_MOVE_SPAN} positions.
+ * Each improving move (lower cost, or equal cost and earlier return) is applied as soon as it is found
+ * and the scan goes on from the same position, until a full pass of every neighborhood finds nothing.
+ */
+public class LocalSearch {
+
+    // Longest segment moved by Or-opt
+    public static final int MAX_OR_OPT_LENGTH = 3;
+    // Moves only reach this many positions away, which keeps a pass linear on large tours
+    public static final int MAX_MOVE_SPAN = 100;
+    // Deadline value meaning the search runs until no move improves the tour
+    public static final long NO_DEADLINE = SolverControl.NO_DEADLINE;
+
+    /**
+     * Improves a tour returned by any of the solvers.
+     *
+     * @param graph The graph object containing cities and connections.
+     * @param tour  The tour as city names, starting and ending at the same city.
+     * @return the improved tour, or the given tour if it is null or not feasible
+     */
+    public static List<String> improve(Graph graph, List<String> tour) {
+        if (tour == null || tour.size() < 4) {
+            return tour; // Nothing to move
+        }
+        CompactGraph compactGraph = graph.toCompactGraph();
+        return compactGraph.toCityNames(improve(compactGraph, compactGraph.toTour(tour)));
+    }
+
+    /**
+     * Improves a tour of city ids until no move improves it.
+     *
+     * @param graph The compact graph.
+     * @param tour  The tour as city ids, starting and ending at the same city. It is not modified.
+     * @return the improved tour, or a copy of the given tour if it is not feasible
+     */
+    public static int[] improve(CompactGraph graph, int[] tour) {
+        return improve(graph, tour, NO_DEADLINE);
+    }
+
+    /**
+     * Improves a tour of city ids until no move improves it or the deadline passes.
+     *
+     * @param graph         The compact graph.
+     * @param tour          The tour as city ids, starting and ending at the same city. It is not modified.
+     * @param deadlineNanos {@link System#nanoTime()} value after which the search stops with the current tour,
+     *                      or {@link #NO_DEADLINE}.
+     * @return the improved tour, or a copy of the given tour if it is not feasible
+     */
+    public static int[] improve(CompactGraph graph, int[] tour, long deadlineNanos) {
+        return improve(graph, tour, 0, tour.length, deadlineNanos);
+    }
+
+    /**
+     * Improves a tour with the moves that start at positions from..to-1 only, which is enough after a
+     * change to that part of an otherwise locally optimal tour.
+     *
+     * @param graph         The compact graph.
+     * @param tour          The tour as city ids, starting and ending at the same city. It is not modified.
+     * @param from          First tour position a move may start at.
+     * @param to            One past the last tour position a move may start at.
+     * @param deadlineNanos {@link System#nanoTime()} value after which the search stops with the current tour,
+     *                      or {@link #NO_DEADLINE}.
+     * @return the improved tour, or a copy of the given tour if it is not feasible
+     */
+    public static int[] improve(CompactGraph graph, int[] tour, int from, int to, long deadlineNanos) {
+        return improve(graph, tour, from, to, new SolverControl(deadlineNanos));
+    }
+
+    /**
+     * Same as {@link #improve(CompactGraph, int[], int, int, long)}, stopping with the current tour as soon
+     * as the control says so.
+     */
+    public static int[] improve(CompactGraph graph, int[] tour, int from, int to, SolverControl control) {
+        int[] result = graph.calculateFeasiblePathCost(tour);
+        if (result == null || tour.length < 4) {
+            return tour.clone();
+        }
+
+        Search search = new Search(graph, tour.clone(), result[0], result[1], control);
+        int first = Math.max(1, from);
+        while (!search.expired() && search.improveOnce(first, to)) {
+            // Each pass applies every improving move it finds
+        }
+        return search.tour;
+    }
+
+    /**
+     * Time window data of a sequence of cities. If we reach its first city at time t, we leave its last
+     * city at max(t + duration, earliestEnd), and the sequence is feasible as long as t <= latestStart.
+     * Sequences that can never be feasible (a missing edge, or a forced wait that still misses a
+     * window) are flagged, and stay flagged whatever they are concatenated with.
+     */
+    static final class Segment {
+        // Latest start of a sequence without any deadline
+        private static final long UNBOUNDED = Long.MAX_VALUE / 4;
+
+        long duration; // Travel time along the sequence, without waiting
+        long earliestEnd; // Time we leave the last city when arriving at the first one very early
+        long latestStart; // Latest arrival at the first city that keeps every window
+        boolean feasible;
+
+        void setCity(CompactGraph graph, int city) {
+            setCity(graph.earliest(city), graph.latest(city));
+        }
+
+        void setCity(int earliest, int latest) {
+            duration = 0;
+            earliestEnd = earliest;
+            latestStart = latest;
+            feasible = true;
+        }
+
+        // Leaving the start city, the tour is evaluated by arriving here at time 0
+        void setStart() {
+            duration = 0;
+            earliestEnd = 0;
+            latestStart = UNBOUNDED;
+            feasible = true;
+        }
+
+        void set(Segment other) {
+            duration = other.duration;
+            earliestEnd = other.earliestEnd;
+            latestStart = other.latestStart;
+            feasible = other.feasible;
+        }
+
+        boolean isFeasible() {
+            return feasible;
+        }
+
+        // Time we leave the last city when the first city is reached at time 0
+        long endTime() {
+            return Math.max(duration, earliestEnd);
+        }
+
+        /**
+         * Writes first followed by second into out, where travelTime links the last city of first to
+         * the first city of second. out may be the same object as first or second.
+         */
+        static void concat(Segment first, int travelTime, Segment second, Segment out) {
+            if (travelTime == CompactGraph.NO_EDGE || !first.feasible || !second.feasible
+                    || first.earliestEnd + travelTime > second.latestStart) {
+                out.feasible = false;
+                return;
+            }
+            long duration = first.duration + travelTime + second.duration;
+            long earliestEnd = Math.max(first.earliestEnd + travelTime + second.duration, second.earliestEnd);
+            long latestStart = Math.min(first.latestStart, second.latestStart - first.duration - travelTime);
+
+            out.duration = duration;
+            out.earliestEnd = earliestEnd;
+            out.latestStart = latestStart;
+            out.feasible = true;
+        }
+    }
+
+    private static class Search {
+        private final CompactGraph graph;
+        private final int[] tour;
+        private final int last; // Index of the closing start city
+        private final SolverControl control;
+        private long cost;
+        private long time;
+
+        // prefix[k] covers tour[0..k] leaving the start at time 0, suffix[k] covers tour[k..last].
+        // Only prefix[0..prefixEnd] and suffix[suffixStart..last] are up to date.
+        private final Segment[] prefix;
+        private final Segment[] suffix;
+        private int prefixEnd;
+        private int suffixStart;
+        private final Segment node = new Segment();
+        private final Segment link = new Segment(); // Used only to extend prefix and suffix data
+        private final Segment middle = new Segment();
+        private final Segment moved = new Segment();
+        private final Segment candidate = new Segment();
+
+        private Search(CompactGraph graph, int[] tour, int cost, int time, SolverControl control) {
+            this.graph = graph;
+            this.tour = tour;
+            this.last = tour.length - 1;
+            this.cost = cost;
+            this.time = time;
+            this.control = control;
+            prefix = new Segment[tour.length];
+            suffix = new Segment[tour.length];
+            for (int k = 0; k < tour.length; k++) {
+                prefix[k] = new Segment();
+                suffix[k] = new Segment();
+            }
+            prefixEnd = -1;
+            suffixStart = tour.length;
+        }
+
+        // One pass over every neighborhood for moves starting at positions first..to-1, true if any move was applied
+        private boolean improveOnce(int first, int to) {
+            boolean improved = false;
+            for (int i = first; i < Math.min(to, last - 1); i++) {
+                if (expired()) return improved;
+                while (twoOpt(i)) {
+                    improved = true; // Try the same position again on the new tour
+                }
+            }
+            for (int length = 1; length <= MAX_OR_OPT_LENGTH; length++) {
+                for (int i = first; i < to && i + length - 1 < last; i++) {
+                    if (expired()) return improved;
+                    while (orOpt(i, length)) {
+                        improved = true;
+                    }
+                }
+            }
+            for (int i = first; i < Math.min(to, last - 1); i++) {
+                if (expired()) return improved;
+                while (swap(i)) {
+                    improved = true;
+                }
+            }
+            return improved;
+        }
+
+        // Marks the data that covers the changed positions from..to as stale
+        private void invalidate(int from, int to) {
+            prefixEnd = Math.min(prefixEnd, from - 1);
+            suffixStart = Math.max(suffixStart, to + 1);
+        }
+
+        // Data of tour[0..k], extended from the last valid prefix so a move only pays for what it changed
+        private Segment prefix(int k) {
+            for (; prefixEnd < k; prefixEnd++) {
+                int next = prefixEnd + 1;
+                if (next == 0) {
+                    prefix[0].setStart();
+                } else {
+                    link.setCity(graph, tour[next]);
+                    Segment.concat(prefix[next - 1], travel(next - 1, next), link, prefix[next]);
+                }
+            }
+            return prefix[k];
+        }
+
+        // Data of tour[k..last], extended backwards from the first valid suffix
+        private Segment suffix(int k) {
+            for (; suffixStart > k; suffixStart--) {
+                int next = suffixStart - 1;
+                if (next == last) {
+                    suffix[last].setCity(graph, tour[last]);
+                } else {
+                    if (next == 0) {
+                        link.setStart();
+                    } else {
+                        link.setCity(graph, tour[next]);
+                    }
+                    Segment.concat(link, travel(next, next + 1), suffix[next + 1], suffix[next]);
+                }
+            }
+            return suffix[k];
+        }
+
+        /**
+         * Reverses tour[i..j]. The reversed segment grows by one city at its front for every j,
+         * and once it is infeasible on its own every longer reversal is too.
+         */
+        private boolean twoOpt(int i) {
+            middle.setCity(graph, tour[i]);
+            long reversedCost = 0;
+            long forwardCost = 0;
+
+            int limit = Math.min(last, i + MAX_MOVE_SPAN);
+            for (int j = i + 1; j < limit; j++) {
+                node.setCity(graph, tour[j]);
+                Segment.concat(node, graph.travelTime(tour[j], tour[j - 1]), middle, middle);
+                if (!middle.isFeasible()) break;
+                reversedCost += graph.distance(tour[j], tour[j - 1]);
+                forwardCost += graph.distance(tour[j - 1], tour[j]);
+
+                Segment.concat(prefix(i - 1), graph.travelTime(tour[i - 1], tour[j]), middle, candidate);
+                Segment.concat(candidate, graph.travelTime(tour[i], tour[j + 1]), suffix(j + 1), candidate);
+                if (!candidate.isFeasible()) continue;
+
+                long delta = graph.distance(tour[i - 1], tour[j]) + graph.distance(tour[i], tour[j + 1])
+                        - graph.distance(tour[i - 1], tour[i]) - graph.distance(tour[j], tour[j + 1])
+                        + reversedCost - forwardCost;
+                if (accept(delta, candidate)) {
+                    reverse(i, j);
+                    invalidate(i, j);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Moves tour[i..i+length-1] between tour[p] and tour[p+1], scanning p away from the segment
+         * in both directions so the cities jumped over form a segment that grows by one city per step.
+         */
+        private boolean orOpt(int i, int length) {
+            int end = i + length - 1;
+            moved.setCity(graph, tour[i]);
+            for (int k = i + 1; k <= end; k++) {
+                node.setCity(graph, tour[k]);
+                Segment.concat(moved, travel(k - 1, k), node, moved);
+            }
+            if (!moved.isFeasible()) return false;
+            long removed = graph.distance(tour[i - 1], tour[i]) + graph.distance(tour[end], tour[end + 1]);
+
+            // Backwards: prefix[p], moved, tour[p+1..i-1], suffix[end+1]
+            for (int p = i - 2; p >= Math.max(0, i - 1 - MAX_MOVE_SPAN); p--) {
+                node.setCity(graph, tour[p + 1]);
+                if (p == i - 2) middle.set(node);
+                else Segment.concat(node, travel(p + 1, p + 2), middle, middle);
+                if (!middle.isFeasible()) break;
+
+                Segment.concat(prefix(p), graph.travelTime(tour[p], tour[i]), moved, candidate);
+                Segment.concat(candidate, graph.travelTime(tour[end], tour[p + 1]), middle, candidate);
+                Segment.concat(candidate, graph.travelTime(tour[i - 1], tour[end + 1]), suffix(end + 1), candidate);
+                if (!candidate.isFeasible()) continue;
+
+                long delta = graph.distance(tour[p], tour[i]) + graph.distance(tour[end], tour[p + 1])
+                        + graph.distance(tour[i - 1], tour[end + 1])
+                        - graph.distance(tour[p], tour[p + 1]) - removed;
+                if (accept(delta, candidate)) {
+                    moveSegment(i, length, p + 1);
+                    invalidate(p + 1, end);
+                    return true;
+                }
+            }
+
+            // Forwards: prefix[i-1], tour[end+1..p], moved, suffix[p+1]
+            int limit = Math.min(last, end + 1 + MAX_MOVE_SPAN);
+            for (int p = end + 1; p < limit; p++) {
+                node.setCity(graph, tour[p]);
+                if (p == end + 1) middle.set(node);
+                else Segment.concat(middle, travel(p - 1, p), node, middle);
+                if (!middle.isFeasible()) break;
+
+                Segment.concat(prefix(i - 1), graph.travelTime(tour[i - 1], tour[end + 1]), middle, candidate);
+                Segment.concat(candidate, graph.travelTime(tour[p], tour[i]), moved, candidate);
+                Segment.concat(candidate, graph.travelTime(tour[end], tour[p + 1]), suffix(p + 1), candidate);
+                if (!candidate.isFeasible()) continue;
+
+                long delta = graph.distance(tour[i - 1], tour[end + 1]) + graph.distance(tour[p], tour[i])
+                        + graph.distance(tour[end], tour[p + 1])
+                        - graph.distance(tour[p], tour[p + 1]) - removed;
+                if (accept(delta, candidate)) {
+                    moveSegment(i, length, p - length + 1);
+                    invalidate(i, p);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Exchanges tour[i] and tour[j], the cities between them form a segment that grows with j
+        private boolean swap(int i) {
+            int limit = Math.min(last, i + MAX_MOVE_SPAN);
+            for (int j = i + 1; j < limit; j++) {
+                int a = tour[i];
+                int b = tour[j];
+                long delta;
+
+                moved.setCity(graph, b);
+                if (j == i + 1) {
+                    node.setCity(graph, a);
+                    Segment.concat(prefix(i - 1), graph.travelTime(tour[i - 1], b), moved, candidate);
+                    Segment.concat(candidate, graph.travelTime(b, a), node, candidate);
+                    Segment.concat(candidate, graph.travelTime(a, tour[j + 1]), suffix(j + 1), candidate);
+                    if (!candidate.isFeasible()) continue;
+                    delta = graph.distance(tour[i - 1], b) + graph.distance(b, a) + graph.distance(a, tour[j + 1])
+                            - graph.distance(tour[i - 1], a) - graph.distance(a, b) - graph.distance(b, tour[j + 1]);
+                } else {
+                    node.setCity(graph, tour[j - 1]);
+                    if (j == i + 2) middle.set(node);
+                    else Segment.concat(middle, travel(j - 2, j - 1), node, middle);
+                    if (!middle.isFeasible()) break;
+
+                    node.setCity(graph, a);
+                    Segment.concat(prefix(i - 1), graph.travelTime(tour[i - 1], b), moved, candidate);
+                    Segment.concat(candidate, graph.travelTime(b, tour[i + 1]), middle, candidate);
+                    Segment.concat(candidate, graph.travelTime(tour[j - 1], a), node, candidate);
+                    Segment.concat(candidate, graph.travelTime(a, tour[j + 1]), suffix(j + 1), candidate);
+                    if (!candidate.isFeasible()) continue;
+                    delta = graph.distance(tour[i - 1], b) + graph.distance(b, tour[i + 1])
+                            + graph.distance(tour[j - 1], a) + graph.distance(a, tour[j + 1])
+                            - graph.distance(tour[i - 1], a) - graph.distance(a, tour[i + 1])
+                            - graph.distance(tour[j - 1], b) - graph.distance(b, tour[j + 1]);
+                }
+
+                if (accept(delta, candidate)) {
+                    tour[i] = b;
+                    tour[j] = a;
+                    invalidate(i, j);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Takes the move if the tour gets cheaper, or returns earlier at the same cost
+        private boolean accept(long delta, Segment route) {
+            if (route.latestStart < 0) return false; // The tour leaves the start city at time 0
+            long newTime = route.endTime();
+            if (delta < 0 || (delta == 0 && newTime < time)) {
+                cost += delta;
+                time = newTime;
+                return true;
+            }
+            return false;
+        }
+
+        private boolean expired() {
+            return control.shouldStop();
+        }
+
+        private int travel(int from, int to) {
+            return graph.travelTime(tour[from], tour[to]);
+        }
+
+        private void reverse(int i, int j) {
+            while (i < j) {
+                int temp = tour[i];
+                tour[i++] = tour[j];
+                tour[j--] = temp;
+            }
+        }
+
+        // Moves tour[from..from+length-1] so that it starts at index 'to'
+        private void moveSegment(int from, int length, int to) {
+            int[] segment = new int[length];
+            System.arraycopy(tour, from, segment, 0, length);
+            if (to < from) {
+                System.arraycopy(tour, to, tour, to + length, from - to);
+            } else {
+                System.arraycopy(tour, from + length, tour, from, to - from);
+            }
+            System.arraycopy(segment, 0, tour, to, length);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from non-negative long keys to int values.
+ * Keys and values are kept in primitive arrays with linear probing, so lookups never box.
+ */
+public class LongIntHashMap {
+
+    // Marks an empty slot, valid keys are never negative
+    private static final long EMPTY = -1L;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int shift; // 64 - log2(capacity), used to take the top bits of the hash
+
+    /**
+     * @param expectedSize number of entries the map should hold before it has to grow
+     */
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * @param key          non-negative key
+     * @param defaultValue value returned when the key is missing
+     * @return the value of the key, or defaultValue if the key is not in the map
+     */
+    public int get(long key, int defaultValue) {
+        int mask = keys.length - 1;
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            long current = keys[slot];
+            if (current == key) return values[slot];
+            if (current == EMPTY) return defaultValue;
+        }
+    }
+
+    /**
+     * Associates the value with the key, replacing any previous value.
+     *
+     * @param key   non-negative key
+     * @param value the value to store
+     */
+    public void put(long key, int value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Keys must be non-negative.");
+        }
+        int mask = keys.length - 1;
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            long current = keys[slot];
+            if (current == key) {
+                values[slot] = value;
+                return;
+            }
+            if (current == EMPTY) {
+                keys[slot] = key;
+                values[slot] = value;
+                if (++size * 2 > keys.length) {
+                    grow();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the number of entries in the map
+     */
+    public int size() {
+        return size;
+    }
+
+    // --------- Slot Iteration ---------
+
+    /**
+     * @return the number of slots, entries are found by scanning slots 0..capacity()-1
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * @return true if the slot holds an entry
+     */
+    public boolean isUsed(int slot) {
+        return keys[slot] != EMPTY;
+    }
+
+    public long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    public int valueAt(int slot) {
+        return values[slot];
+    }
+
+    // --------- Private Helper Methods ---------
+
+    private int slot(long key) {
+        // Fibonacci hashing spreads the clustered state keys over the table
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(oldKeys.length * 2);
+
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY) continue;
+            int slot = slot(oldKeys[i]);
+            while (keys[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+}
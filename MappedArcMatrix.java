@@ -0,0 +1,64 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * {@link ArcMatrix} over a row-major block of little-endian ints in a file, mapped read-only.
+ * Mapping reads nothing: the operating system loads pages on first access and keeps them in its page
+ * cache, where every process that maps the same file shares them. A single mapping cannot exceed 2 GB,
+ * so the block is mapped in chunks of whole rows, a power of two rows each.
+ */
+public final class MappedArcMatrix implements ArcMatrix {
+
+    // Largest mapping FileChannel.map accepts
+    private static final long MAX_CHUNK_BYTES = Integer.MAX_VALUE;
+
+    private final int size;
+    private final int chunkShift; // log2 of the rows per chunk
+    private final int rowMask; // Rows per chunk minus one
+    private final IntBuffer[] chunks;
+
+    /**
+     * Maps size*size ints starting at a byte offset of the file. The channel may be closed afterwards.
+     *
+     * @param channel The file, open for reading.
+     * @param offset  Byte offset of the first value, row 0 column 0.
+     * @param size    Number of rows and columns.
+     * @throws IOException if the file is shorter than the block or cannot be mapped
+     */
+    MappedArcMatrix(FileChannel channel, long offset, int size) throws IOException {
+        long rowBytes = (long) size * Integer.BYTES;
+        if (offset + rowBytes * size > channel.size()) {
+            throw new IOException("The file ends inside a matrix block.");
+        }
+        this.size = size;
+        int rowsPerChunk = Integer.highestOneBit((int) Math.max(1, MAX_CHUNK_BYTES / Math.max(rowBytes, 1)));
+        this.chunkShift = Integer.numberOfTrailingZeros(rowsPerChunk);
+        this.rowMask = rowsPerChunk - 1;
+
+        int chunkCount = size == 0 ? 0 : (size + rowsPerChunk - 1) / rowsPerChunk;
+        chunks = new IntBuffer[chunkCount];
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            int rows = Math.min(rowsPerChunk, size - chunk * rowsPerChunk);
+            long start = offset + (long) chunk * rowsPerChunk * rowBytes;
+            chunks[chunk] = channel.map(FileChannel.MapMode.READ_ONLY, start, rows * rowBytes)
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int get(int from, int to) {
+        return chunks[from >>> chunkShift].get((from & rowMask) * size + to);
+    }
+
+    @Override
+    public void getRow(int from, int[] row, int offset) {
+        chunks[from >>> chunkShift].get((from & rowMask) * size, row, offset, size);
+    }
+}
@@ -0,0 +1,342 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A planned tour that takes new cities while it is in use: dispatchers add a stop with {@link Graph#addCity}
+ * and {@link Graph#connectCities}, then call {@link #addCity(String)} to put it into the tour by cheapest
+ * feasible insertion.
+ * <p>
+ * The route caches, per tour position, the time we leave the city, the leg to the next city and the
+ * {@link LocalSearch.Segment} data of the rest of the tour. Each insertion position is then checked in O(1),
+ * and an insertion reads only the arcs of the new city from the graph and costs O(n) in total.
+ * The optional {@link LocalSearch} polish needs a {@link CompactGraph}, which the route grows by the new
+ * cities only when a polish asks for it. Edits to cities that are already in the tour are not picked up,
+ * use {@link Reoptimizer} for those.
+ */
+public class OnlineRoute {
+
+    // Value of a polish budget that skips the local search
+    public static final long NO_POLISH = 0;
+
+    private final Graph graph;
+    private final List<String> names = new ArrayList<>(); // City names by route id
+    private final Set<String> inTour = new HashSet<>();
+    private int[] earliest; // Time window by route id
+    private int[] latest;
+    private CompactGraph compactGraph; // Covers the first compactGraph.size() route ids, the same ids as the route
+
+    private int[] tour; // Route ids, starting and ending at the start city
+    private int[] legTime; // legTime[k] is the travel time from tour[k] to tour[k + 1]
+    private int[] legDistance;
+    private long[] departure; // departure[k] is the time we leave tour[k]
+    private LocalSearch.Segment[] suffix; // suffix[k] covers tour[k..last]
+    private int cost;
+
+    /**
+     * @param graph The graph object, later additions to it are inserted with {@link #addCity(String)}.
+     * @param tour  A feasible tour of every city of the graph, starting and ending at the same city.
+     * @throws IllegalArgumentException if the tour is not feasible or misses a city
+     */
+    public OnlineRoute(Graph graph, List<String> tour) {
+        this.graph = graph;
+        this.compactGraph = graph.toCompactGraph();
+        this.tour = compactGraph.toTour(tour);
+        int n = compactGraph.size();
+        if (compactGraph.calculateFeasiblePathCost(this.tour) == null || this.tour.length != n + 1
+                || this.tour[0] != this.tour[n] || new HashSet<>(tour).size() != n) {
+            throw new IllegalArgumentException("The tour must be a feasible tour of every city.");
+        }
+
+        earliest = new int[n];
+        latest = new int[n];
+        for (int city = 0; city < n; city++) {
+            names.add(compactGraph.getName(city));
+            earliest[city] = compactGraph.earliest(city);
+            latest[city] = compactGraph.latest(city);
+        }
+        inTour.addAll(names);
+        cacheLegs();
+    }
+
+    /**
+     * Inserts a city that was added to the graph after this route was created.
+     *
+     * @param name The name of the new city, already connected in the graph.
+     * @return true if the city was inserted, false if no position keeps the tour feasible (the tour is unchanged)
+     * @throws IllegalArgumentException if the city is not in the graph or already in the tour
+     */
+    public boolean addCity(String name) {
+        return addCity(name, NO_POLISH);
+    }
+
+    /**
+     * Inserts a new city, then lets local search re-optimize the part of the tour around it.
+     *
+     * @param name         The name of the new city, already connected in the graph.
+     * @param polishMillis Wall-clock time the local search may use, or {@link #NO_POLISH}.
+     * @return true if the city was inserted, false if no position keeps the tour feasible (the tour is unchanged)
+     * @throws IllegalArgumentException if the city is not in the graph or already in the tour
+     */
+    public boolean addCity(String name, long polishMillis) {
+        if (inTour.contains(name)) {
+            throw new IllegalArgumentException("City is already in the tour: " + name);
+        }
+        if (!graph.hasCity(name)) {
+            throw new IllegalArgumentException("Unknown city: " + name);
+        }
+
+        // Only the arcs of the new city are read from the graph
+        int[] travelTo = new int[tour.length];
+        int[] distanceTo = new int[tour.length];
+        int[] travelFrom = new int[tour.length];
+        int[] distanceFrom = new int[tour.length];
+        for (int k = 0; k < tour.length; k++) {
+            String other = names.get(tour[k]);
+            travelTo[k] = graph.getEdgeTravelTime(other, name);
+            distanceTo[k] = graph.getEdgeTravelDistance(other, name);
+            travelFrom[k] = graph.getEdgeTravelTime(name, other);
+            distanceFrom[k] = graph.getEdgeTravelDistance(name, other);
+        }
+        int[] window = graph.getCityTimeWindow(name);
+        int position = cheapestPosition(departure, suffix, legDistance, travelTo, distanceTo, travelFrom,
+                distanceFrom, window[0], window[1]);
+        if (position == -1) {
+            return false;
+        }
+
+        int city = names.size();
+        names.add(name);
+        inTour.add(name);
+        earliest = Arrays.copyOf(earliest, city + 1);
+        latest = Arrays.copyOf(latest, city + 1);
+        earliest[city] = window[0];
+        latest[city] = window[1];
+        tour = insertAt(tour, position, city);
+        legTime = insertLeg(legTime, position, travelTo[position], travelFrom[position + 1]);
+        legDistance = insertLeg(legDistance, position, distanceTo[position], distanceFrom[position + 1]);
+
+        if (polishMillis > NO_POLISH) {
+            growCompactGraph();
+            // Moves starting this far before the new city can still reach it
+            int from = Math.max(1, position + 1 - LocalSearch.MAX_MOVE_SPAN);
+            int to = Math.min(tour.length, position + 2);
+            tour = LocalSearch.improve(compactGraph, tour, from, to, SolverControl.withBudget(polishMillis));
+            cacheLegs();
+        } else {
+            cacheTimes();
+        }
+        return true;
+    }
+
+    // Adds the cities inserted since the last polish to the compact graph, O(n) per city, the matrices are not copied
+    private void growCompactGraph() {
+        for (int city = compactGraph.size(); city < names.size(); city++) {
+            int n = compactGraph.size();
+            int[] distanceTo = new int[n];
+            int[] travelTimeTo = new int[n];
+            int[] distanceFrom = new int[n];
+            int[] travelTimeFrom = new int[n];
+            String name = names.get(city);
+            for (int other = 0; other < n; other++) {
+                distanceTo[other] = graph.getEdgeTravelDistance(names.get(other), name);
+                travelTimeTo[other] = graph.getEdgeTravelTime(names.get(other), name);
+                distanceFrom[other] = graph.getEdgeTravelDistance(name, names.get(other));
+                travelTimeFrom[other] = graph.getEdgeTravelTime(name, names.get(other));
+            }
+            compactGraph = compactGraph.withCity(name, earliest[city], latest[city], distanceTo, travelTimeTo,
+                    distanceFrom, travelTimeFrom);
+        }
+    }
+
+    // Reads the legs of the tour from the compact graph, after the tour changed more than one insertion
+    private void cacheLegs() {
+        legTime = new int[tour.length - 1];
+        legDistance = new int[tour.length - 1];
+        for (int k = 0; k < tour.length - 1; k++) {
+            legTime[k] = compactGraph.travelTime(tour[k], tour[k + 1]);
+            legDistance[k] = compactGraph.distance(tour[k], tour[k + 1]);
+        }
+        cacheTimes();
+    }
+
+    // Rebuilds the departure times, suffix data and cost from the legs
+    private void cacheTimes() {
+        departure = departures(tour, legTime, earliest);
+        suffix = suffixes(tour, legTime, earliest, latest);
+        cost = 0;
+        for (int distance : legDistance) {
+            cost += distance;
+        }
+    }
+
+    // --------- Get Methods -------------
+
+    /**
+     * @return the current tour as city names
+     */
+    public List<String> getTour() {
+        List<String> path = new ArrayList<>(tour.length);
+        for (int city : tour) {
+            path.add(names.get(city));
+        }
+        return path;
+    }
+
+    public int getCost() {
+        return cost;
+    }
+
+    /**
+     * @return the time the tour returns to its start
+     */
+    public int getTime() {
+        return (int) departure[tour.length - 1];
+    }
+
+    /**
+     * @return the number of cities in the tour, the start counted once
+     */
+    public int size() {
+        return tour.length - 1;
+    }
+
+    // --------- Insertion Helpers ---------
+
+    /**
+     * Cheapest feasible insertion of one city into a feasible tour of a compact graph, with the same checks as
+     * {@link #addCity(String)} but without a cache, so it costs O(n) per call.
+     *
+     * @return the tour with the city inserted, or null if no position keeps the tour feasible
+     */
+    static int[] insert(CompactGraph graph, int[] tour, int city) {
+        int n = graph.size();
+        int[] earliest = new int[n];
+        int[] latest = new int[n];
+        for (int other = 0; other < n; other++) {
+            earliest[other] = graph.earliest(other);
+            latest[other] = graph.latest(other);
+        }
+        int[] legTime = new int[tour.length - 1];
+        int[] legDistance = new int[tour.length - 1];
+        for (int k = 0; k < tour.length - 1; k++) {
+            legTime[k] = graph.travelTime(tour[k], tour[k + 1]);
+            legDistance[k] = graph.distance(tour[k], tour[k + 1]);
+        }
+        int[] travelTo = new int[tour.length];
+        int[] distanceTo = new int[tour.length];
+        int[] travelFrom = new int[tour.length];
+        int[] distanceFrom = new int[tour.length];
+        for (int k = 0; k < tour.length; k++) {
+            travelTo[k] = graph.travelTime(tour[k], city);
+            distanceTo[k] = graph.distance(tour[k], city);
+            travelFrom[k] = graph.travelTime(city, tour[k]);
+            distanceFrom[k] = graph.distance(city, tour[k]);
+        }
+
+        int position = cheapestPosition(departures(tour, legTime, earliest), suffixes(tour, legTime, earliest, latest),
+                legDistance, travelTo, distanceTo, travelFrom, distanceFrom, earliest[city], latest[city]);
+        return position == -1 ? null : insertAt(tour, position, city);
+    }
+
+    /**
+     * @return departure[k], the time we leave tour[k] of a feasible tour, waiting for windows to open
+     */
+    private static long[] departures(int[] tour, int[] legTime, int[] earliest) {
+        long[] departure = new long[tour.length];
+        for (int k = 1; k < tour.length; k++) {
+            departure[k] = Math.max(departure[k - 1] + legTime[k - 1], earliest[tour[k]]);
+        }
+        return departure;
+    }
+
+    /**
+     * @return suffix[k], the segment data of tour[k..last] for k >= 1
+     */
+    private static LocalSearch.Segment[] suffixes(int[] tour, int[] legTime, int[] earliest, int[] latest) {
+        int last = tour.length - 1;
+        LocalSearch.Segment[] suffix = new LocalSearch.Segment[tour.length];
+        LocalSearch.Segment node = new LocalSearch.Segment();
+        suffix[last] = new LocalSearch.Segment();
+        suffix[last].setCity(earliest[tour[last]], latest[tour[last]]);
+        for (int k = last - 1; k >= 1; k--) {
+            suffix[k] = new LocalSearch.Segment();
+            node.setCity(earliest[tour[k]], latest[tour[k]]);
+            LocalSearch.Segment.concat(node, legTime[k], suffix[k + 1], suffix[k]);
+        }
+        return suffix;
+    }
+
+    /**
+     * Cheapest feasible insertion position: lowest added distance, then earliest return. Going between
+     * tour[k] and tour[k+1] is feasible if we reach the city in time after leaving tour[k] at departure[k],
+     * and then reach tour[k+1] no later than the latest start of suffix[k+1].
+     *
+     * @param departure    Time we leave each tour position.
+     * @param suffix       Segment data of the tour from each position on.
+     * @param legDistance  Distance from each tour position to the next.
+     * @param travelTo     Travel time from each tour position to the city, {@link CompactGraph#NO_EDGE} if none.
+     * @param distanceTo   Distance from each tour position to the city.
+     * @param travelFrom   Travel time from the city to each tour position, {@link CompactGraph#NO_EDGE} if none.
+     * @param distanceFrom Distance from the city to each tour position.
+     * @param earliest     Earliest visiting time of the city.
+     * @param latest       Latest visiting time of the city.
+     * @return the position k to insert after, or -1 if no position keeps the tour feasible
+     */
+    private static int cheapestPosition(long[] departure, LocalSearch.Segment[] suffix, int[] legDistance,
+                                        int[] travelTo, int[] distanceTo, int[] travelFrom, int[] distanceFrom,
+                                        int earliest, int latest) {
+        int best = -1;
+        long bestDelta = Long.MAX_VALUE;
+        long bestEnd = Long.MAX_VALUE;
+        for (int k = 0; k < legDistance.length; k++) {
+            int in = travelTo[k];
+            int out = travelFrom[k + 1];
+            if (in == CompactGraph.NO_EDGE || out == CompactGraph.NO_EDGE || !suffix[k + 1].isFeasible()) {
+                continue;
+            }
+            long arrival = departure[k] + in;
+            if (arrival > latest) {
+                continue;
+            }
+            long next = Math.max(arrival, earliest) + out;
+            if (next > suffix[k + 1].latestStart) {
+                continue;
+            }
+            long delta = (long) distanceTo[k] + distanceFrom[k + 1] - legDistance[k];
+            long end = Math.max(next + suffix[k + 1].duration, suffix[k + 1].earliestEnd);
+            if (delta < bestDelta || (delta == bestDelta && end < bestEnd)) {
+                best = k;
+                bestDelta = delta;
+                bestEnd = end;
+            }
+        }
+        return best;
+    }
+
+    // A copy of the tour with the city between tour[position] and tour[position + 1]
+    private static int[] insertAt(int[] tour, int position, int city) {
+        int[] longer = new int[tour.length + 1];
+        System.arraycopy(tour, 0, longer, 0, position + 1);
+        longer[position + 1] = city;
+        System.arraycopy(tour, position + 1, longer, position + 2, tour.length - position - 1);
+        return longer;
+    }
+
+    // A copy of the legs where leg position is replaced by the two legs through the inserted city
+    private static int[] insertLeg(int[] legs, int position, int in, int out) {
+        int[] longer = new int[legs.length + 1];
+        System.arraycopy(legs, 0, longer, 0, position);
+        longer[position] = in;
+        longer[position + 1] = out;
+        System.arraycopy(legs, position + 1, longer, position + 2, legs.length - position - 1);
+        return longer;
+    }
+
+    @Override
+    public String toString() {
+        return "OnlineRoute {cities=" + size() + ", cost=" + cost + ", time=" + getTime() + "}";
+    }
+}
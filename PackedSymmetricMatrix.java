@@ -0,0 +1,224 @@
+/**
+ * {@link ArcMatrix} of a symmetric matrix that stores only the upper triangle, diagonal included, in the
+ * narrowest element type that holds every value: byte up to 254, char up to 65534, int above that.
+ * Values are stored plus one so that the zero of a new array means {@link CompactGraph#NO_EDGE}.
+ * <p>
+ * Row i of the triangle starts at rowOffset[i] + i, so the value of (from, to) is at
+ * rowOffset[min] + max: two intrinsic min/max, one load from a small int array and one load from the values,
+ * without branches. {@link CompactGraph} reads the arrays directly instead of calling {@link #get}, because
+ * its accessors see every {@link ArcMatrix} implementation and an interface call there is megamorphic.
+ * A byte matrix takes an eighth of the memory of two full int triangles, which keeps far more of the
+ * instance in cache.
+ */
+public abstract class PackedSymmetricMatrix implements ArcMatrix {
+
+    // Largest values the narrow types hold once shifted by one
+    static final int MAX_BYTE_VALUE = 0xFF - 1;
+    static final int MAX_CHAR_VALUE = Character.MAX_VALUE - 1;
+    // Longest triangle a Java array can hold
+    private static final long MAX_ELEMENTS = Integer.MAX_VALUE - 8;
+
+    final int size;
+    final int[] rowOffset; // Index of (i, 0) if the row were full, row i starts at rowOffset[i] + i
+
+    PackedSymmetricMatrix(int size) {
+        long elements = (long) size * (size + 1) / 2;
+        if (elements > MAX_ELEMENTS) {
+            throw new IllegalArgumentException("Too many cities for a packed matrix: " + size);
+        }
+        this.size = size;
+        this.rowOffset = new int[size];
+        long start = 0;
+        for (int row = 0; row < size; row++) {
+            rowOffset[row] = (int) (start - row);
+            start += size - row;
+        }
+    }
+
+    /**
+     * @param size     Number of rows and columns.
+     * @param maxValue Largest value that will be set.
+     * @return an empty matrix, every arc {@link CompactGraph#NO_EDGE}, of the narrowest type for the values
+     */
+    static PackedSymmetricMatrix create(int size, int maxValue) {
+        if (maxValue <= MAX_BYTE_VALUE) return new ByteMatrix(size);
+        if (maxValue <= MAX_CHAR_VALUE) return new CharMatrix(size);
+        return new IntMatrix(size);
+    }
+
+    /**
+     * Packs a full row-major matrix if it is symmetric.
+     *
+     * @param size   Number of rows and columns.
+     * @param values Row-major size*size values, {@link CompactGraph#NO_EDGE} for missing arcs.
+     * @return the packed matrix, or an {@link ArrayArcMatrix} over the values if they are not symmetric,
+     * have a value on the diagonal or are too many to pack
+     */
+    static ArcMatrix of(int size, int[] values) {
+        int maxValue = CompactGraph.NO_EDGE;
+        for (int from = 0; from < size; from++) {
+            if (values[from * size + from] != CompactGraph.NO_EDGE) {
+                return new ArrayArcMatrix(size, values);
+            }
+            for (int to = from + 1; to < size; to++) {
+                int value = values[from * size + to];
+                if (value != values[to * size + from] || value < CompactGraph.NO_EDGE) {
+                    return new ArrayArcMatrix(size, values);
+                }
+                maxValue = Math.max(maxValue, value);
+            }
+        }
+        if ((long) size * (size + 1) / 2 > MAX_ELEMENTS) {
+            return new ArrayArcMatrix(size, values);
+        }
+
+        PackedSymmetricMatrix matrix = create(size, maxValue);
+        for (int from = 0; from < size; from++) {
+            for (int to = from + 1; to < size; to++) {
+                matrix.set(from, to, values[from * size + to]);
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Packs a full matrix given as rows if it is symmetric, reading the diagonal as {@link CompactGraph#NO_EDGE}.
+     *
+     * @param rows size rows of size values, {@link CompactGraph#NO_EDGE} for missing arcs. They are not kept.
+     * @return the packed matrix, or an {@link ArrayArcMatrix} over a row-major copy if the rows are not symmetric
+     * @throws IllegalArgumentException if the matrix is symmetric but its triangle does not fit in an array, or
+     *                                  asymmetric and its full size does not
+     */
+    static ArcMatrix of(int[][] rows) {
+        int size = rows.length;
+        int maxValue = CompactGraph.NO_EDGE;
+        boolean symmetric = true;
+        for (int from = 0; from < size && symmetric; from++) {
+            for (int to = from + 1; to < size; to++) {
+                int value = rows[from][to];
+                if (value != rows[to][from]) {
+                    symmetric = false;
+                    break;
+                }
+                maxValue = Math.max(maxValue, value);
+            }
+        }
+
+        if (!symmetric) {
+            if ((long) size * size > MAX_ELEMENTS) {
+                throw new IllegalArgumentException("Too many cities for an asymmetric matrix: " + size);
+            }
+            int[] values = new int[size * size];
+            for (int from = 0; from < size; from++) {
+                System.arraycopy(rows[from], 0, values, from * size, size);
+                values[from * size + from] = CompactGraph.NO_EDGE;
+            }
+            return new ArrayArcMatrix(size, values);
+        }
+        if ((long) size * (size + 1) / 2 > MAX_ELEMENTS) {
+            throw new IllegalArgumentException("Too many cities for a packed matrix: " + size);
+        }
+        PackedSymmetricMatrix matrix = create(size, maxValue);
+        for (int from = 0; from < size; from++) {
+            int[] row = rows[from];
+            for (int to = from + 1; to < size; to++) {
+                matrix.set(from, to, row[to]);
+            }
+        }
+        return matrix;
+    }
+
+    @Override
+    public final int size() {
+        return size;
+    }
+
+    /**
+     * Sets the value of both (from, to) and (to, from), only while the matrix is being built.
+     *
+     * @param value a value between 0 and the maxValue the matrix was created for, or {@link CompactGraph#NO_EDGE}
+     */
+    abstract void set(int from, int to, int value);
+
+    /**
+     * @return the number of bytes of one stored value
+     */
+    public abstract int getElementBytes();
+
+    // Index of (from, to) in the triangle
+    final int index(int from, int to) {
+        return rowOffset[Math.min(from, to)] + Math.max(from, to);
+    }
+
+    static final class ByteMatrix extends PackedSymmetricMatrix {
+        final byte[] values;
+
+        ByteMatrix(int size) {
+            super(size);
+            values = new byte[(int) ((long) size * (size + 1) / 2)];
+        }
+
+        @Override
+        public int get(int from, int to) {
+            return (values[rowOffset[Math.min(from, to)] + Math.max(from, to)] & 0xFF) - 1;
+        }
+
+        @Override
+        void set(int from, int to, int value) {
+            values[index(from, to)] = (byte) (value + 1);
+        }
+
+        @Override
+        public int getElementBytes() {
+            return Byte.BYTES;
+        }
+    }
+
+    static final class CharMatrix extends PackedSymmetricMatrix {
+        final char[] values;
+
+        CharMatrix(int size) {
+            super(size);
+            values = new char[(int) ((long) size * (size + 1) / 2)];
+        }
+
+        @Override
+        public int get(int from, int to) {
+            return values[rowOffset[Math.min(from, to)] + Math.max(from, to)] - 1;
+        }
+
+        @Override
+        void set(int from, int to, int value) {
+            values[index(from, to)] = (char) (value + 1);
+        }
+
+        @Override
+        public int getElementBytes() {
+            return Character.BYTES;
+        }
+    }
+
+    static final class IntMatrix extends PackedSymmetricMatrix {
+        final int[] values;
+
+        IntMatrix(int size) {
+            super(size);
+            values = new int[(int) ((long) size * (size + 1) / 2)];
+        }
+
+        @Override
+        public int get(int from, int to) {
+            return values[rowOffset[Math.min(from, to)] + Math.max(from, to)] - 1;
+        }
+
+        @Override
+        void set(int from, int to, int value) {
+            values[index(from, to)] = value + 1;
+        }
+
+        @Override
+        public int getElementBytes() {
+            return Integer.BYTES;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Races several solvers on the same instance under one control. Each solver that supports the instance
+ * runs on its own thread; the race ends when a solver proves its tour optimal (or proves there is none),
+ * when every solver has returned, or at the deadline. The remaining solvers are then cancelled
+ * cooperatively, and the race returns once every solver has handed in its best tour, so no solver
+ * thread or graph outlives the call.
+ * <p>
+ * The solvers run on a pool created for each race, or on an executor shared by every race of this
+ * portfolio. A shared executor needs a thread for every solver of every race running at the same time,
+ * otherwise the solvers queued behind the others start after the deadline and return nothing.
+ */
+public class PortfolioSolver implements TsptwSolver {
+
+    // Longest wait for a result before checking whether the caller cancelled the race
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final List<TsptwSolver> solvers;
+    private final ExecutorService executor; // Null to create a pool for each race
+
+    /**
+     * @param solvers the solvers to race, in order of preference when results tie
+     */
+    public PortfolioSolver(List<TsptwSolver> solvers) {
+        this(solvers, null);
+    }
+
+    /**
+     * @param solvers  the solvers to race, in order of preference when results tie
+     * @param executor runs the solvers of every race, it is not shut down by the portfolio
+     */
+    public PortfolioSolver(List<TsptwSolver> solvers, ExecutorService executor) {
+        if (solvers.isEmpty()) {
+            throw new IllegalArgumentException("A portfolio needs at least one solver.");
+        }
+        this.solvers = new ArrayList<>(solvers);
+        this.executor = executor;
+    }
+
+    /**
+     * @return a portfolio of every built-in solver, the parallel ones sharing the processors out between them
+     */
+    public static PortfolioSolver ofAll() {
+        return ofAll(null);
+    }
+
+    /**
+     * @param executor runs the solvers of every race, see {@link #PortfolioSolver(List, ExecutorService)}
+     * @return a portfolio of every built-in solver on a shared executor, the parallel ones sharing the
+     * processors out between them
+     */
+    public static PortfolioSolver ofAll(ExecutorService executor) {
+        int width = Solvers.all().size();
+        return ofAll(executor, Math.max(1, Runtime.getRuntime().availableProcessors() / width));
+    }
+
+    /**
+     * @param executor    runs the solvers of every race, see {@link #PortfolioSolver(List, ExecutorService)}
+     * @param parallelism Threads of the own pool of each parallel solver, see {@link Solvers#all(int)}.
+     * @return a portfolio of every built-in solver on a shared executor
+     */
+    public static PortfolioSolver ofAll(ExecutorService executor, int parallelism) {
+        return new PortfolioSolver(Solvers.all(parallelism), executor);
+    }
+
+    /**
+     * @return the number of solvers in the portfolio, each racing on a thread of the executor
+     */
+    public int getWidth() {
+        return solvers.size();
+    }
+
+    @Override
+    public String getName() {
+        return "Portfolio";
+    }
+
+    /**
+     * A solver that throws only loses the race, unless every solver does.
+     *
+     * @return the best result of the race, named after the solver that found it; its stats add how many
+     * solvers were started, how many returned and how many of those failed
+     * @throws IllegalStateException if every solver failed, caused by the first failure with the others
+     *                               suppressed
+     */
+    @Override
+    public SolverResult solve(CompactGraph graph, int startCity, SolverControl control) {
+        long startNanos = System.nanoTime();
+        SolverControl race = control.child(); // Cancelling it stops every solver, not the caller's control
+
+        List<TsptwSolver> entrants = new ArrayList<>();
+        for (TsptwSolver solver : solvers) {
+            if (solver.supports(graph)) entrants.add(solver);
+        }
+
+        ExecutorService executor = this.executor != null ? this.executor
+                : Executors.newFixedThreadPool(Math.max(entrants.size(), 1), runnable -> {
+                    Thread thread = new Thread(runnable, "portfolio-solver");
+                    thread.setDaemon(true); // A solver that ignores the cancel must not keep the JVM alive
+                    return thread;
+                });
+        CompletionService<SolverResult> completion = new ExecutorCompletionService<>(executor);
+        for (TsptwSolver solver : entrants) {
+            completion.submit(() -> solver.solve(graph, startCity, race));
+        }
+
+        SolverResult best = null;
+        int returned = 0;
+        Failures failures = new Failures();
+        try {
+            // Collect results until one is proven, all are in, or the deadline passes
+            while (returned < entrants.size()) {
+                Future<SolverResult> future = nextResult(completion, race);
+                if (future == null) break;
+                returned++;
+                SolverResult result = resultOf(future, failures);
+                if (result == null) continue;
+                if (result.isProvenOptimal()) {
+                    best = result;
+                    break;
+                }
+                if (result.isBetterThan(best)) best = result;
+            }
+
+            // Stop the others and wait for them, so their threads and the graph are free when the race returns
+            race.cancel();
+            while (returned < entrants.size()) {
+                Future<SolverResult> future = completion.take();
+                returned++;
+                SolverResult result = resultOf(future, failures);
+                if (result != null && result.isBetterThan(best) && (best == null || !best.isProvenOptimal())) {
+                    best = result;
+                }
+            }
+        } catch (InterruptedException e) {
+            // The caller gives up on the race, the cancelled solvers finish on their own
+            race.cancel();
+            Thread.currentThread().interrupt();
+        } finally {
+            if (executor != this.executor) executor.shutdown();
+        }
+
+        if (!entrants.isEmpty() && failures.count == entrants.size()) {
+            throw new IllegalStateException("Every solver of the portfolio failed.", failures.first);
+        }
+
+        Map<String, Number> stats = new LinkedHashMap<>();
+        if (best != null) stats.putAll(best.getStats());
+        stats.put("solversStarted", entrants.size());
+        stats.put("solversReturned", returned);
+        stats.put("solversFailed", failures.count);
+        String winner = best == null ? getName() : best.getSolverName();
+        return new SolverResult(winner, graph, best == null ? null : best.getTour(),
+                best != null && best.isProvenOptimal(), System.nanoTime() - startNanos, stats);
+    }
+
+    // Waits for the next solver to return, null once the control's deadline passes or it is cancelled
+    private static Future<SolverResult> nextResult(CompletionService<SolverResult> completion, SolverControl control)
+            throws InterruptedException {
+        while (!control.isCancelled()) {
+            long waitNanos = POLL_NANOS;
+            if (control.getDeadlineNanos() != SolverControl.NO_DEADLINE) {
+                waitNanos = Math.min(waitNanos, control.getDeadlineNanos() - System.nanoTime());
+                if (waitNanos <= 0) return null;
+            }
+            Future<SolverResult> future = completion.poll(waitNanos, TimeUnit.NANOSECONDS);
+            if (future != null) return future;
+        }
+        return null;
+    }
+
+    // The result of a finished solver, or null if it failed
+    private static SolverResult resultOf(Future<SolverResult> future, Failures failures) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            failures.add(e.getCause());
+            return null;
+        }
+    }
+
+    // Solvers of a race that threw, the first cause keeps the later ones as suppressed
+    private static final class Failures {
+        private int count;
+        private Throwable first;
+
+        private void add(Throwable cause) {
+            count++;
+            if (first == null) {
+                first = cause;
+            } else if (first != cause) {
+                first.addSuppressed(cause);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getName() + solvers;
+    }
+}
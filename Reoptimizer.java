@@ -0,0 +1,337 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Re-optimization of a known tour after small edits to the instance, for dispatching where a time window or
+ * an edge changes every few seconds and a full re-solve takes too long.
+ * <p>
+ * The caller applies the edits with the {@link Graph} update methods and describes them with a {@link Change}.
+ * The part of the tour before the first affected position keeps its times, so feasibility is only checked
+ * from there on. If the tour broke, the cities that cause it are ejected and put back by cheapest feasible
+ * insertion, each candidate position checked in O(1) like in {@link OnlineRoute}. {@link LocalSearch} then
+ * re-optimizes around the change only.
+ * When the local repair cannot find a feasible tour, the tour is rebuilt with the greedy tour and local search.
+ */
+public class Reoptimizer {
+
+    // Most cities ejected by a repair before the tour is rebuilt from scratch
+    public static final int MAX_EJECTED = 16;
+
+    /**
+     * Re-optimizes a tour of city names after the graph was updated.
+     *
+     * @param graph        The graph object, already updated.
+     * @param previousTour The tour before the update, starting and ending at the same city.
+     * @param change       The edits applied to the graph since the tour was found.
+     * @param budgetMillis Wall-clock time the re-optimization may use, measured from this call.
+     * @return The repaired and re-optimized tour as a list of city names, or null if none was found.
+     * @throws IllegalArgumentException if the tour or the change names cities that are not in the graph
+     */
+    public static List<String> reoptimize(Graph graph, List<String> previousTour, Change change, long budgetMillis) {
+        SolverControl control = SolverControl.withBudget(budgetMillis);
+        CompactGraph compactGraph = graph.toCompactGraph();
+        int[] tour = compactGraph.toTour(previousTour);
+        return compactGraph.toCityNames(reoptimize(compactGraph, tour, change, control).getTour());
+    }
+
+    /**
+     * Re-optimizes a tour of city ids after the graph was updated.
+     *
+     * @param graph        The compact graph, built after the update.
+     * @param previousTour The tour before the update as city ids, starting and ending at the same city.
+     *                     It is not modified.
+     * @param change       The edits applied to the graph since the tour was found.
+     * @param control      Deadline and cancellation of the local search, the repair itself always finishes.
+     * @return the new tour with what it took, the tour is null if no feasible tour was found
+     * @throws IllegalArgumentException if the tour is not a tour of every city or the change names unknown cities
+     */
+    public static Result reoptimize(CompactGraph graph, int[] previousTour, Change change, SolverControl control) {
+        long startNanos = System.nanoTime();
+        checkTour(graph, previousTour);
+        int n = graph.size();
+        int last = previousTour.length - 1;
+
+        int[] position = new int[n];
+        for (int k = 0; k < last; k++) {
+            position[previousTour[k]] = k;
+        }
+        Result result = new Result();
+
+        // Positions whose arrival time the change can move, and the range local search should look at
+        int firstAffected = previousTour.length;
+        int low = last;
+        int high = 0;
+        for (String name : change.windows) {
+            int city = cityOf(graph, name);
+            int k = city == previousTour[0] ? last : position[city]; // The start window is checked on return
+            firstAffected = Math.min(firstAffected, k);
+            low = Math.min(low, k);
+            high = Math.max(high, k);
+        }
+        for (String[] arc : change.arcs) {
+            int from = position[cityOf(graph, arc[0])];
+            int to = cityOf(graph, arc[1]);
+            if (previousTour[from + 1] == to) {
+                firstAffected = Math.min(firstAffected, from + 1); // The tour uses the arc
+            }
+            // A new or cheaper arc may pay off at either end
+            int k = to == previousTour[0] ? last : position[to];
+            low = Math.min(low, Math.min(from, k));
+            high = Math.max(high, Math.max(from, k));
+        }
+        result.firstAffected = firstAffected;
+
+        // The prefix before the first affected position is unchanged, only its times are needed
+        int[] tour = previousTour.clone();
+        List<Integer> ejected = new ArrayList<>();
+        int time = 0;
+        for (int k = 0; k + 1 < Math.min(firstAffected, tour.length); k++) {
+            time = Math.max(time + graph.travelTime(tour[k], tour[k + 1]), graph.earliest(tour[k + 1]));
+        }
+        int broken = firstFailure(graph, tour, Math.max(firstAffected, 1), time);
+        if (broken != -1) {
+            // Eject the failing cities until the remaining tour is feasible, then insert them again
+            tour = eject(graph, tour, broken, ejected);
+            tour = tour == null ? null : insertAll(graph, tour, ejected);
+            if (tour != null) {
+                low = Math.min(low, broken - 1);
+                high = Math.max(high, broken);
+                for (int city : ejected) {
+                    int k = indexOf(tour, city);
+                    low = Math.min(low, k);
+                    high = Math.max(high, k);
+                }
+            }
+        }
+        result.ejected = ejected.size();
+
+        if (tour != null && low <= high) {
+            // Moves starting this far before the change can still reach it
+            int from = Math.max(1, low - LocalSearch.MAX_MOVE_SPAN);
+            tour = LocalSearch.improve(graph, tour, from, Math.min(tour.length, high + 1), control);
+        }
+        int[] value = tour == null ? null : graph.calculateFeasiblePathCost(tour);
+        if (value == null) {
+            // The local repair failed, or the unchanged part was not feasible to begin with: start over
+            result.rebuilt = true;
+            tour = Greedy.solveTSPTW_Greedy(graph, previousTour[0]);
+            if (tour != null) {
+                tour = LocalSearch.improve(graph, tour, 0, tour.length, control);
+                value = graph.calculateFeasiblePathCost(tour);
+            }
+        }
+
+        if (value != null) {
+            result.tour = tour;
+            result.cost = value[0];
+            result.time = value[1];
+        }
+        result.elapsedNanos = System.nanoTime() - startNanos;
+        return result;
+    }
+
+    // Rejects anything but a closed tour visiting every city once
+    private static void checkTour(CompactGraph graph, int[] tour) {
+        int n = graph.size();
+        if (tour.length != n + 1 || tour[0] != tour[n]) {
+            throw new IllegalArgumentException("The tour must visit every city once and return to its start.");
+        }
+        boolean[] seen = new boolean[n];
+        for (int k = 0; k < n; k++) {
+            if (tour[k] < 0 || tour[k] >= n || seen[tour[k]]) {
+                throw new IllegalArgumentException("The tour must visit every city once and return to its start.");
+            }
+            seen[tour[k]] = true;
+        }
+    }
+
+    private static int cityOf(CompactGraph graph, String name) {
+        int city = graph.indexOf(name);
+        if (city == -1) {
+            throw new IllegalArgumentException("Unknown city: " + name);
+        }
+        return city;
+    }
+
+    /**
+     * Walks the tour from position from, having left tour[from - 1] at time.
+     *
+     * @return the first position that cannot be reached in time, or -1 if the rest of the tour is feasible
+     */
+    private static int firstFailure(CompactGraph graph, int[] tour, int from, int time) {
+        for (int k = from; k < tour.length; k++) {
+            time = graph.getValidArrivalTime(tour[k - 1], tour[k], time);
+            if (time == -1) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes cities until the tour is feasible: the city at the failing position, or the one before it when
+     * the failure is the return to the start. Removing a city never makes an earlier position fail, so the
+     * walk goes on from the removed position.
+     *
+     * @return the shorter feasible tour, or null if more than {@link #MAX_EJECTED} cities had to go
+     */
+    private static int[] eject(CompactGraph graph, int[] tour, int broken, List<Integer> ejected) {
+        while (broken != -1) {
+            int k = broken == tour.length - 1 ? broken - 1 : broken;
+            if (k == 0 || ejected.size() == MAX_EJECTED) {
+                return null; // Even the start alone cannot make it back
+            }
+            ejected.add(tour[k]);
+            int[] shorter = new int[tour.length - 1];
+            System.arraycopy(tour, 0, shorter, 0, k);
+            System.arraycopy(tour, k + 1, shorter, k, tour.length - k - 1);
+            tour = shorter;
+
+            // Departure time from tour[k - 1] is unchanged by the removal
+            int time = 0;
+            for (int i = 0; i + 1 < k; i++) {
+                time = Math.max(time + graph.travelTime(tour[i], tour[i + 1]), graph.earliest(tour[i + 1]));
+            }
+            broken = firstFailure(graph, tour, k, time);
+        }
+        return tour;
+    }
+
+    // Inserts the cities with the tightest deadline first, null if one of them fits nowhere
+    private static int[] insertAll(CompactGraph graph, int[] tour, List<Integer> cities) {
+        List<Integer> order = new ArrayList<>(cities);
+        order.sort((a, b) -> Integer.compare(graph.latest(a), graph.latest(b)));
+        for (int city : order) {
+            tour = OnlineRoute.insert(graph, tour, city);
+            if (tour == null) {
+                return null;
+            }
+        }
+        return tour;
+    }
+
+    private static int indexOf(int[] tour, int city) {
+        for (int k = 0; k < tour.length; k++) {
+            if (tour[k] == city) return k;
+        }
+        return -1;
+    }
+
+    /**
+     * The edits applied to a graph since a tour was found, one factory per {@link Graph} update method.
+     * Combine several edits with {@link #and(Change)}.
+     */
+    public static final class Change {
+        private final List<String> windows; // Cities whose time window changed
+        private final List<String[]> arcs; // Directed arcs that changed, were added or were removed
+
+        private Change(List<String> windows, List<String[]> arcs) {
+            this.windows = windows;
+            this.arcs = arcs;
+        }
+
+        /**
+         * @return the change made by {@link Graph#updateTimeWindow(String, int, int)}
+         */
+        public static Change timeWindow(String city) {
+            return new Change(List.of(city), List.of());
+        }
+
+        /**
+         * @return the change made by {@link Graph#updateEdgeValues(String, String, int, int)}, both directions
+         */
+        public static Change edgeValues(String from, String to) {
+            return new Change(List.of(), List.of(new String[]{from, to}, new String[]{to, from}));
+        }
+
+        /**
+         * @return the change made by {@link Graph#updateEdgeTo(String, String, String, int, int)}
+         */
+        public static Change edgeTo(String from, String oldTo, String newTo) {
+            return new Change(List.of(), List.of(new String[]{from, oldTo}, new String[]{oldTo, from},
+                    new String[]{from, newTo}, new String[]{newTo, from}));
+        }
+
+        /**
+         * @return a change made of this one and the other one
+         */
+        public Change and(Change other) {
+            List<String> windows = new ArrayList<>(this.windows);
+            windows.addAll(other.windows);
+            List<String[]> arcs = new ArrayList<>(this.arcs);
+            arcs.addAll(other.arcs);
+            return new Change(Collections.unmodifiableList(windows), Collections.unmodifiableList(arcs));
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder arcNames = new StringBuilder();
+            for (String[] arc : arcs) {
+                arcNames.append(arcNames.length() == 0 ? "" : ", ").append(Arrays.toString(arc));
+            }
+            return "Change {windows=" + windows + ", arcs=[" + arcNames + "]}";
+        }
+    }
+
+    public static class Result {
+        private int[] tour;
+        private int cost = -1;
+        private int time = -1;
+        private int firstAffected;
+        private int ejected;
+        private boolean rebuilt;
+        private long elapsedNanos;
+
+        private Result() {
+        }
+
+        /**
+         * @return the new tour as city ids, or null if no feasible tour was found
+         */
+        public int[] getTour() {
+            return tour;
+        }
+
+        public int getCost() {
+            return cost;
+        }
+
+        public int getTime() {
+            return time;
+        }
+
+        /**
+         * @return the first tour position whose arrival the change can move, the tour length if there is none
+         */
+        public int getFirstAffected() {
+            return firstAffected;
+        }
+
+        /**
+         * @return how many cities the repair took out and inserted again
+         */
+        public int getEjected() {
+            return ejected;
+        }
+
+        /**
+         * @return true if the local repair failed and the tour was built again from scratch
+         */
+        public boolean isRebuilt() {
+            return rebuilt;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Reoptimizer.Result {cost=" + (tour == null ? "none" : cost) + ", time=" + (tour == null ? "none" : time)
+                    + ", firstAffected=" + firstAffected + ", ejected=" + ejected + ", rebuilt=" + rebuilt
+                    + ", elapsedMillis=" + elapsedNanos / 1_000_000 + "}";
+        }
+    }
+}
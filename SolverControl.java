@@ -0,0 +1,92 @@
+/**
+ * Deadline and cancellation shared between a caller and a running solver. Solvers poll
+ * {@link #shouldStop()} in their main loops and return the best tour they have when it turns true,
+ * so stopping is cooperative and never leaves a half-written result.
+ * A child control has its own cancellation but also stops when its parent does, which lets a portfolio
+ * cancel every solver at once and still tell which of them were cut short.
+ */
+public class SolverControl {
+
+    // Deadline value meaning the solver runs until it finishes or is cancelled
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private final SolverControl parent;
+    private final long deadlineNanos;
+    private volatile boolean cancelled;
+    private volatile boolean interrupted;
+
+    /**
+     * @param deadlineNanos {@link System#nanoTime()} value at which solvers stop, or {@link #NO_DEADLINE}
+     */
+    public SolverControl(long deadlineNanos) {
+        this(null, deadlineNanos);
+    }
+
+    private SolverControl(SolverControl parent, long deadlineNanos) {
+        this.parent = parent;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * @return a control without deadline, it only stops when cancelled
+     */
+    public static SolverControl unlimited() {
+        return new SolverControl(NO_DEADLINE);
+    }
+
+    /**
+     * @param budgetMillis wall-clock time from now
+     * @return a control whose deadline is budgetMillis from now
+     */
+    public static SolverControl withBudget(long budgetMillis) {
+        return new SolverControl(System.nanoTime() + budgetMillis * 1_000_000L);
+    }
+
+    /**
+     * @return a control with the same deadline that also stops when this one is cancelled
+     */
+    public SolverControl child() {
+        return new SolverControl(this, deadlineNanos);
+    }
+
+    /**
+     * Asks every solver polling this control, or one of its children, to stop.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled || (parent != null && parent.isCancelled());
+    }
+
+    public long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+
+    public boolean isExpired() {
+        return deadlineNanos != NO_DEADLINE && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    /**
+     * Polled by solvers. A true answer is remembered, so the caller can tell that the solver's
+     * result may be incomplete.
+     *
+     * @return true if the solver should return now
+     */
+    public boolean shouldStop() {
+        if (isCancelled() || isExpired()) {
+            interrupted = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if a solver was told to stop through this control, so an exact solver's result is
+     * not proven optimal
+     */
+    public boolean wasInterrupted() {
+        return interrupted;
+    }
+}
@@ -0,0 +1,109 @@
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of one {@link TsptwSolver} run: the tour with its cost and return time, whether the solver
+ * proved it optimal, and solver-specific statistics. A proven result without a tour means the solver
+ * proved that no feasible tour exists.
+ */
+public class SolverResult {
+
+    private final String solverName;
+    private final int[] tour;
+    private final int cost;
+    private final int time;
+    private final boolean provenOptimal;
+    private final long elapsedNanos;
+    private final Map<String, Number> stats;
+
+    /**
+     * @param solverName    Name of the solver that found the tour.
+     * @param graph         The graph the tour is evaluated on.
+     * @param tour          The tour as city ids, or null if none was found. An infeasible tour counts as none.
+     * @param provenOptimal True if no better tour exists, or no tour at all when tour is null.
+     * @param elapsedNanos  Wall-clock time of the run.
+     * @param stats         Solver-specific counters, copied.
+     */
+    public SolverResult(String solverName, CompactGraph graph, int[] tour, boolean provenOptimal, long elapsedNanos,
+                        Map<String, Number> stats) {
+        int[] value = tour == null ? null : graph.calculateFeasiblePathCost(tour);
+        this.solverName = solverName;
+        this.tour = value == null ? null : tour;
+        this.cost = value == null ? -1 : value[0];
+        this.time = value == null ? -1 : value[1];
+        this.provenOptimal = provenOptimal && (value != null || tour == null);
+        this.elapsedNanos = elapsedNanos;
+        this.stats = Collections.unmodifiableMap(new LinkedHashMap<>(stats));
+    }
+
+    // --------- Get Methods -------------
+
+    public String getSolverName() {
+        return solverName;
+    }
+
+    /**
+     * @return the tour as city ids, or null if no feasible tour was found
+     */
+    public int[] getTour() {
+        return tour;
+    }
+
+    /**
+     * @param graph the graph the solver ran on
+     * @return the tour as city names, or null if no feasible tour was found
+     */
+    public List<String> getPath(CompactGraph graph) {
+        return graph.toCityNames(tour);
+    }
+
+    public boolean hasTour() {
+        return tour != null;
+    }
+
+    /**
+     * @return the cost of the tour, or -1 if there is none
+     */
+    public int getCost() {
+        return cost;
+    }
+
+    /**
+     * @return the return time of the tour, or -1 if there is none
+     */
+    public int getTime() {
+        return time;
+    }
+
+    public boolean isProvenOptimal() {
+        return provenOptimal;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public Map<String, Number> getStats() {
+        return stats;
+    }
+
+    /**
+     * Lower cost first, then earlier return, like every solver's own tie-break. Any tour beats none.
+     *
+     * @return true if this result has a better tour than the other one, or the other one is null
+     */
+    public boolean isBetterThan(SolverResult other) {
+        if (other == null || !other.hasTour()) return hasTour();
+        if (!hasTour()) return false;
+        return cost < other.cost || (cost == other.cost && time < other.time);
+    }
+
+    @Override
+    public String toString() {
+        return "SolverResult {solver=" + solverName + ", cost=" + (tour == null ? "none" : cost)
+                + ", time=" + (tour == null ? "none" : time) + ", provenOptimal=" + provenOptimal
+                + ", elapsedMillis=" + elapsedNanos / 1_000_000 + ", stats=" + stats + "}";
+    }
+}
@@ -0,0 +1,250 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+/**
+ * The built-in algorithms behind the {@link TsptwSolver} interface. Exact solvers, Greedy and Divide and
+ * Conquer run on the graph reduced by {@link TimeWindowReduction}, up to its size limit, and report what it
+ * removed in their stats. Exact solvers mark their result proven optimal when they finish without being
+ * stopped. The metaheuristics (VNS, GRASP, Genetic) run until the control's deadline or a cancel, so give
+ * them a control with a deadline; the other heuristics finish on their own.
+ * <p>
+ * The parallel solvers (GRASP, Genetic, Ant Colony) start a pool of their own for every solve, sized by the
+ * parallelism they were created with. Each of them sizes its work by the pool, so on a shared pool one solver
+ * of a portfolio would take every thread and the others would only start once it returned.
+ */
+public final class Solvers {
+
+    // Largest instances the exact solvers accept, above these they would not finish or not fit in memory
+    public static final int BRUTE_FORCE_MAX_CITIES = 12;
+    public static final int DP_MAX_CITIES = DynamicProgramming.MAX_DENSE_CITIES;
+    public static final int BRANCH_AND_BOUND_MAX_CITIES = BranchAndBound.MAX_CITIES;
+    // The ant colony keeps a full pheromone matrix
+    public static final int ANT_COLONY_MAX_CITIES = AntColony.MAX_CITIES;
+    private static final long SEED = 42;
+    // Threads of a parallel solver by default, one per processor
+    public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    private Solvers() {
+    }
+
+    public static TsptwSolver bruteForce() {
+        return new Adapter("BruteForce", BRUTE_FORCE_MAX_CITIES, true,
+                (graph, start, control, stats) -> BruteForce.solveTSPTW_BruteForce(graph, start, control));
+    }
+
+    public static TsptwSolver dynamicProgramming() {
+        return new Adapter("DynamicProgramming", DP_MAX_CITIES, true,
+                (graph, start, control, stats) -> DynamicProgramming.solveTSPTW_DPTour(graph, start, control));
+    }
+
+    public static TsptwSolver branchAndBound() {
+        return new Adapter("BranchAndBound", BRANCH_AND_BOUND_MAX_CITIES, true,
+                (graph, start, control, stats) -> BranchAndBound.solveTSPTW_BranchAndBound(graph, start, true,
+                        BranchAndBound.DEFAULT_MAX_OPEN_NODES, control));
+    }
+
+    public static TsptwSolver greedy() {
+        return new Adapter("Greedy", Integer.MAX_VALUE, false, true,
+                (graph, start, control, stats) -> Greedy.solveTSPTW_Greedy(graph, start));
+    }
+
+    public static TsptwSolver divideAndConquer() {
+        return new Adapter("DivideAndConquer", Integer.MAX_VALUE, false, true, (graph, start, control, stats) -> {
+            int[] cities = new int[graph.size()];
+            for (int city = 0; city < cities.length; city++) {
+                cities[city] = city;
+            }
+            return DivideAndConquer.solveTSPTW_DivideAndConquer(graph, cities, start);
+        });
+    }
+
+    public static TsptwSolver variableNeighborhoodSearch() {
+        return new Adapter("VNS", Integer.MAX_VALUE, false, (graph, start, control, stats) -> {
+            VariableNeighborhoodSearch.Result result = VariableNeighborhoodSearch.solveTSPTW_VNS(graph, start, control, SEED);
+            stats.put("iterations", result.getIterations());
+            stats.put("improvements", result.getTrace().size());
+            return result.getTour();
+        });
+    }
+
+    public static TsptwSolver grasp() {
+        return grasp(DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * @param parallelism Threads of the pool each solve runs on.
+     * @return GRASP with one worker per thread
+     */
+    public static TsptwSolver grasp(int parallelism) {
+        return new Adapter("GRASP", Integer.MAX_VALUE, false, (graph, start, control, stats) -> {
+            Grasp.Result result = onOwnPool(parallelism, pool -> Grasp.solveTSPTW_GRASP(graph, start,
+                    Grasp.DEFAULT_CANDIDATES, Grasp.NO_TARGET, control, SEED, pool));
+            stats.put("starts", result.getStarts());
+            stats.put("workers", result.getWorkers());
+            return result.getTour();
+        });
+    }
+
+    public static TsptwSolver genetic() {
+        return genetic(DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * @param parallelism Threads of the pool each solve runs on.
+     * @return the genetic algorithm with one island per thread
+     */
+    public static TsptwSolver genetic(int parallelism) {
+        return new Adapter("Genetic", Integer.MAX_VALUE, false, (graph, start, control, stats) -> {
+            GeneticAlgorithm.Result result = onOwnPool(parallelism, pool -> GeneticAlgorithm.solveTSPTW_Genetic(graph,
+                    start, GeneticAlgorithm.DEFAULT_POPULATION_SIZE, GeneticAlgorithm.DEFAULT_MIGRATION_INTERVAL,
+                    control, SEED, pool));
+            stats.put("generations", result.getGenerations());
+            stats.put("migrations", result.getMigrations());
+            return result.getTour();
+        });
+    }
+
+    public static TsptwSolver antColony() {
+        return antColony(DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * @param parallelism Threads of the pool each solve runs on.
+     * @return the ant colony building the ants of an iteration on that many threads
+     */
+    public static TsptwSolver antColony(int parallelism) {
+        return new Adapter("AntColony", ANT_COLONY_MAX_CITIES, false,
+                (graph, start, control, stats) -> onOwnPool(parallelism, pool -> AntColony.solveTSPTW_AntColony(graph,
+                        start, AntColony.DEFAULT_ANTS, AntColony.DEFAULT_ITERATIONS, SEED, pool, control)));
+    }
+
+    /**
+     * @return every built-in solver, exact solvers first, the parallel ones on a thread per processor
+     */
+    public static List<TsptwSolver> all() {
+        return all(DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * @param parallelism Threads of the pool of each parallel solver, see {@link #grasp(int)}.
+     * @return every built-in solver, exact solvers first
+     */
+    public static List<TsptwSolver> all(int parallelism) {
+        List<TsptwSolver> solvers = new ArrayList<>();
+        solvers.add(bruteForce());
+        solvers.add(dynamicProgramming());
+        solvers.add(branchAndBound());
+        solvers.add(greedy());
+        solvers.add(divideAndConquer());
+        solvers.add(variableNeighborhoodSearch());
+        solvers.add(grasp(parallelism));
+        solvers.add(genetic(parallelism));
+        solvers.add(antColony(parallelism));
+        return solvers;
+    }
+
+    /**
+     * @param name the solver name, ignoring case
+     * @return the built-in solver with that name
+     * @throws IllegalArgumentException if there is no such solver
+     */
+    public static TsptwSolver byName(String name) {
+        return byName(name, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * @param name        the solver name, ignoring case
+     * @param parallelism Threads of the pool of a parallel solver, see {@link #grasp(int)}.
+     * @return the built-in solver with that name
+     * @throws IllegalArgumentException if there is no such solver
+     */
+    public static TsptwSolver byName(String name, int parallelism) {
+        for (TsptwSolver solver : all(parallelism)) {
+            if (solver.getName().equalsIgnoreCase(name)) {
+                return solver;
+            }
+        }
+        throw new IllegalArgumentException("Unknown solver: " + name);
+    }
+
+    // Runs a parallel solver on a pool of its own, which is shut down when the solver returns
+    private static <T> T onOwnPool(int parallelism, Function<ForkJoinPool, T> solver) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return solver.apply(pool);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // The solver-specific part of an adapter, stats receives the solver's counters
+    @FunctionalInterface
+    private interface Algorithm {
+        int[] run(CompactGraph graph, int startCity, SolverControl control, Map<String, Number> stats);
+    }
+
+    private static class Adapter implements TsptwSolver {
+        private final String name;
+        private final int maxCities;
+        private final boolean exact;
+        private final boolean reduced; // Runs on the reduced graph when it is small enough to reduce
+        private final Algorithm algorithm;
+
+        private Adapter(String name, int maxCities, boolean exact, Algorithm algorithm) {
+            this(name, maxCities, exact, exact, algorithm);
+        }
+
+        private Adapter(String name, int maxCities, boolean exact, boolean reduced, Algorithm algorithm) {
+            this.name = name;
+            this.maxCities = maxCities;
+            this.exact = exact;
+            this.reduced = reduced;
+            this.algorithm = algorithm;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean supports(CompactGraph graph) {
+            return graph.size() <= maxCities;
+        }
+
+        @Override
+        public SolverResult solve(CompactGraph graph, int startCity, SolverControl control) {
+            long startNanos = System.nanoTime();
+            Map<String, Number> stats = new LinkedHashMap<>();
+            // Own control, so wasInterrupted() only tells about this run
+            SolverControl run = control.child();
+
+            CompactGraph searchGraph = graph;
+            if (reduced && graph.size() <= TimeWindowReduction.MAX_CITIES) {
+                // Shared with the other solvers of a portfolio on this graph, and stopped with this run
+                TimeWindowReduction reduction = graph.getReduction(startCity, run);
+                stats.put("arcsRemoved", reduction.getArcsRemoved());
+                stats.put("windowsTightened", reduction.getWindowsTightened());
+                stats.put("timeUnitsRemoved", reduction.getTimeUnitsRemoved());
+                // The propagation proves there is no tour, whatever the solver
+                if (reduction.isInfeasible()) {
+                    return new SolverResult(name, graph, null, true, System.nanoTime() - startNanos, stats);
+                }
+                searchGraph = reduction.getGraph();
+            }
+
+            int[] tour = algorithm.run(searchGraph, startCity, run, stats);
+            boolean proven = exact && !run.wasInterrupted();
+            return new SolverResult(name, graph, tour, proven, System.nanoTime() - startNanos, stats);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
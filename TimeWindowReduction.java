@@ -0,0 +1,302 @@
+/**
+ * Preprocessing of a {@link CompactGraph} that uses the time windows before any search starts.
+ * Windows are tightened by earliest-arrival and latest-departure propagation, forced precedences between
+ * cities are inferred from shortest travel times, and arcs that no feasible tour can use are removed.
+ * Every feasible tour of the original graph stays feasible with the same cost and time, so all solvers
+ * can run on the reduced graph instead.
+ */
+public class TimeWindowReduction {
+
+    // Largest instance reduced, every propagation pass is O(n^2) over full n*n copies of both matrices,
+    // about 130 ms and 8 MB at this size but seconds from 2048 cities on
+    public static final int MAX_CITIES = 1024;
+
+    // Above this many cities the O(n^3) shortest travel times are skipped and no precedences are inferred
+    private static final int PRECEDENCE_LIMIT = 400;
+    // Upper bound on propagation passes, each pass costs O(n^2)
+    private static final int MAX_PASSES = 32;
+
+    private CompactGraph graph; // The reduced graph
+    private final int startCity;
+    private final long[] precedes; // Bit matrix, bit (i, j) set when city i must be visited before city j
+    private final int words; // Longs per row of the bit matrix
+    private int arcsRemoved;
+    private int windowsTightened;
+    private long timeUnitsRemoved;
+    private int precedences;
+    private boolean infeasible;
+    private boolean stopped;
+
+    private TimeWindowReduction(int startCity, long[] precedes, int words) {
+        this.startCity = startCity;
+        this.precedes = precedes;
+        this.words = words;
+    }
+
+    /**
+     * Reduces the graph for tours that leave the start city at time 0.
+     *
+     * @param graph     The compact graph to reduce, it is not modified.
+     * @param startCity The starting city id.
+     * @return the reduction with the reduced graph and what was removed
+     * @throws IllegalArgumentException if there are more than {@link #MAX_CITIES} cities
+     */
+    public static TimeWindowReduction reduce(CompactGraph graph, int startCity) {
+        return reduce(graph, startCity, SolverControl.unlimited());
+    }
+
+    /**
+     * Reduces the graph for tours that leave the start city at time 0, stopping early when the control
+     * says so. The control is checked between propagation passes and while computing the shortest travel
+     * times; every finished pass is sound, so a stopped reduction is still valid, it only removes less.
+     *
+     * @param graph     The compact graph to reduce, it is not modified.
+     * @param startCity The starting city id.
+     * @param control   Deadline and cancellation of the solve the reduction is part of.
+     * @return the reduction with the reduced graph and what was removed
+     * @throws IllegalArgumentException if there are more than {@link #MAX_CITIES} cities
+     */
+    public static TimeWindowReduction reduce(CompactGraph graph, int startCity, SolverControl control) {
+        int n = graph.size();
+        if (n > MAX_CITIES) {
+            throw new IllegalArgumentException("Too many cities for the time window reduction: " + n
+                    + ", at most " + MAX_CITIES + ".");
+        }
+        String[] names = new String[n];
+        int[] distance = new int[n * n];
+        int[] travelTime = new int[n * n];
+        int[] earliest = new int[n];
+        int[] latest = new int[n];
+        int words = (n + 63) >>> 6;
+        TimeWindowReduction reduction = new TimeWindowReduction(startCity, new long[n * words], words);
+        for (int i = 0; i < n; i++) {
+            if (control.shouldStop()) {
+                reduction.stopped = true;
+                reduction.graph = graph; // Nothing removed yet
+                return reduction;
+            }
+            names[i] = graph.getName(i);
+            earliest[i] = graph.earliest(i);
+            latest[i] = graph.latest(i);
+            for (int j = 0; j < n; j++) {
+                distance[i * n + j] = graph.distance(i, j);
+                travelTime[i * n + j] = graph.travelTime(i, j);
+            }
+        }
+
+        int[] shortestTime = n <= PRECEDENCE_LIMIT ? shortestTravelTimes(travelTime, n, control) : null;
+
+        // Each pass can enable the next one, stop once nothing changes
+        boolean changed = true;
+        for (int pass = 0; changed && pass < MAX_PASSES; pass++) {
+            if (control.shouldStop()) {
+                reduction.stopped = true;
+                break;
+            }
+            changed = reduction.tightenWindows(travelTime, earliest, latest, n);
+            if (shortestTime != null) {
+                changed |= reduction.inferPrecedences(shortestTime, earliest, latest, n);
+            }
+            changed |= reduction.removeArcs(distance, travelTime, earliest, latest, n);
+        }
+
+        for (int i = 0; i < n; i++) {
+            reduction.timeUnitsRemoved += (long) (graph.latest(i) - graph.earliest(i)) - (latest[i] - earliest[i]);
+            if (graph.earliest(i) != earliest[i] || graph.latest(i) != latest[i]) {
+                reduction.windowsTightened++;
+            }
+        }
+        // An unchanged graph is shared instead of packed again
+        boolean unchanged = reduction.arcsRemoved == 0 && reduction.windowsTightened == 0;
+        reduction.graph = unchanged ? graph : new CompactGraph(names, distance, travelTime, earliest, latest);
+        return reduction;
+    }
+
+    // --------- Get Methods -------------
+
+    /**
+     * @return the reduced graph, with the same city ids as the original
+     */
+    public CompactGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return the number of arcs that no feasible tour can use
+     */
+    public int getArcsRemoved() {
+        return arcsRemoved;
+    }
+
+    /**
+     * @return the number of cities whose time window was tightened
+     */
+    public int getWindowsTightened() {
+        return windowsTightened;
+    }
+
+    /**
+     * @return the total width removed from all time windows, i.e. the (city, time) states no tour can be in
+     */
+    public long getTimeUnitsRemoved() {
+        return timeUnitsRemoved;
+    }
+
+    /**
+     * @return the number of inferred (before, after) pairs
+     */
+    public int getPrecedences() {
+        return precedences;
+    }
+
+    /**
+     * @return true if the propagation proved that no feasible tour exists
+     */
+    public boolean isInfeasible() {
+        return infeasible;
+    }
+
+    /**
+     * @return true if the control stopped the reduction before the propagation settled
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * @param before city id
+     * @param after  city id
+     * @return true if every feasible tour visits 'before' earlier than 'after'
+     */
+    public boolean mustPrecede(int before, int after) {
+        return (precedes[before * words + (after >>> 6)] & (1L << after)) != 0;
+    }
+
+    @Override
+    public String toString() {
+        return "TimeWindowReduction {arcsRemoved=" + arcsRemoved + ", windowsTightened=" + windowsTightened
+                + ", timeUnitsRemoved=" + timeUnitsRemoved + ", precedences=" + precedences
+                + ", infeasible=" + infeasible + ", stopped=" + stopped + "}";
+    }
+
+    // --------- Private Helper Methods ---------
+
+    /**
+     * Earliest arrival: a city cannot be reached before the earliest departure of any predecessor plus
+     * the travel time. Latest departure: a city must be left in time to reach some successor before its
+     * latest time. The start city keeps its window, it is left at time 0 and only its return is checked.
+     *
+     * @return true if any window changed
+     */
+    private boolean tightenWindows(int[] travelTime, int[] earliest, int[] latest, int n) {
+        boolean changed = false;
+        for (int j = 0; j < n; j++) {
+            if (j == startCity) continue;
+
+            int earliestArrival = Integer.MAX_VALUE;
+            int latestDeparture = Integer.MIN_VALUE;
+            for (int i = 0; i < n; i++) {
+                int in = travelTime[i * n + j];
+                if (in != CompactGraph.NO_EDGE) {
+                    int departure = i == startCity ? 0 : earliest[i];
+                    earliestArrival = Math.min(earliestArrival, departure + in);
+                }
+                int out = travelTime[j * n + i];
+                if (out != CompactGraph.NO_EDGE) {
+                    latestDeparture = Math.max(latestDeparture, latest[i] - out);
+                }
+            }
+
+            int newEarliest = Math.max(earliest[j], earliestArrival);
+            int newLatest = Math.min(latest[j], latestDeparture);
+            if (newEarliest > newLatest) {
+                infeasible = true; // The city cannot be visited, keep the window valid and let the solvers fail
+                continue;
+            }
+            if (newEarliest != earliest[j] || newLatest != latest[j]) {
+                earliest[j] = newEarliest;
+                latest[j] = newLatest;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * City j must precede city i when i cannot be left early enough to reach j by its latest time,
+     * even along the fastest route.
+     *
+     * @return true if a new precedence was found
+     */
+    private boolean inferPrecedences(int[] shortestTime, int[] earliest, int[] latest, int n) {
+        boolean changed = false;
+        for (int i = 0; i < n; i++) {
+            if (i == startCity) continue;
+            for (int j = 0; j < n; j++) {
+                if (j == startCity || i == j || mustPrecede(j, i)) continue;
+
+                int time = shortestTime[i * n + j];
+                if (time == Integer.MAX_VALUE || earliest[i] + time > latest[j]) {
+                    if (mustPrecede(i, j)) {
+                        infeasible = true; // Neither order works
+                        continue;
+                    }
+                    precedes[j * words + (i >>> 6)] |= 1L << i;
+                    precedences++;
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Removes i -> j when j closes before i can reach it, or when j has to be visited before i.
+     *
+     * @return true if an arc was removed
+     */
+    private boolean removeArcs(int[] distance, int[] travelTime, int[] earliest, int[] latest, int n) {
+        boolean changed = false;
+        for (int i = 0; i < n; i++) {
+            int departure = i == startCity ? 0 : earliest[i];
+            for (int j = 0; j < n; j++) {
+                int arc = i * n + j;
+                if (travelTime[arc] == CompactGraph.NO_EDGE) continue;
+
+                boolean tooLate = departure + travelTime[arc] > latest[j];
+                if (tooLate || mustPrecede(j, i)) {
+                    distance[arc] = CompactGraph.NO_EDGE;
+                    travelTime[arc] = CompactGraph.NO_EDGE;
+                    arcsRemoved++;
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    // Floyd-Warshall over the travel times, Integer.MAX_VALUE where no route exists. Null if the control
+    // stops it, unfinished times are not lower bounds and would infer wrong precedences
+    private static int[] shortestTravelTimes(int[] travelTime, int n, SolverControl control) {
+        int[] shortest = new int[n * n];
+        for (int i = 0; i < n * n; i++) {
+            shortest[i] = travelTime[i] == CompactGraph.NO_EDGE ? Integer.MAX_VALUE : travelTime[i];
+        }
+        for (int k = 0; k < n; k++) {
+            if (control.shouldStop()) {
+                return null;
+            }
+            for (int i = 0; i < n; i++) {
+                int viaK = shortest[i * n + k];
+                if (viaK == Integer.MAX_VALUE) continue;
+                for (int j = 0; j < n; j++) {
+                    int kj = shortest[k * n + j];
+                    if (kj != Integer.MAX_VALUE && viaK + kj < shortest[i * n + j]) {
+                        shortest[i * n + j] = viaK + kj;
+                    }
+                }
+            }
+        }
+        return shortest;
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * Common entry point of all TSPTW algorithms. Implementations are stateless and may be shared between
+ * threads, and they poll the {@link SolverControl} so callers can bound and cancel every run the same way.
+ * {@link Solvers} lists the built-in algorithms, {@link PortfolioSolver} races several of them.
+ */
+public interface TsptwSolver {
+
+    /**
+     * @return a short name for reports, unique among the built-in solvers
+     */
+    String getName();
+
+    /**
+     * @param graph the instance
+     * @return false if the instance is too large for this solver to run in reasonable time or memory
+     */
+    default boolean supports(CompactGraph graph) {
+        return true;
+    }
+
+    /**
+     * Solves the instance until the solver finishes or the control says to stop.
+     *
+     * @param graph     The compact graph containing cities and connections.
+     * @param startCity The starting city id.
+     * @param control   Deadline and cancellation of the run.
+     * @return the best tour found, never null
+     */
+    SolverResult solve(CompactGraph graph, int startCity, SolverControl control);
+
+    /**
+     * Solves a {@link Graph} by city names, see {@link #solve(CompactGraph, int, SolverControl)}.
+     *
+     * @throws IllegalArgumentException if the start city is not part of the graph
+     */
+    default SolverResult solve(Graph graph, String startCity, SolverControl control) {
+        CompactGraph compactGraph = graph.toCompactGraph();
+        int start = compactGraph.indexOf(startCity);
+        if (start == -1) {
+            throw new IllegalArgumentException("Unknown city: " + startCity);
+        }
+        return solve(compactGraph, start, control);
+    }
+}
@@ -0,0 +1,257 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Anytime solver for large instances: variable neighborhood search that starts from the greedy tour
+ * and runs until a wall-clock deadline. Each iteration shakes the best tour with k random segment
+ * relocations, improves the changed part of the tour with {@link LocalSearch} and keeps the result if it
+ * is better. k grows after every failed iteration and goes back to 1 after an improvement.
+ * A best-so-far tour exists at all times.
+ */
+public class VariableNeighborhoodSearch {
+
+    // Largest number of relocations in one shake
+    private static final int MAX_SHAKE = 5;
+    // A shaken segment moves at most this many positions, far moves almost always break a window
+    private static final int SHAKE_RANGE = 10;
+    // Attempts to find a feasible shaken tour before the iteration is counted as failed
+    private static final int SHAKE_ATTEMPTS = 20;
+    private static final long DEFAULT_SEED = 42;
+
+    /**
+     * Solves the TSPTW problem within a time budget.
+     *
+     * @param graph        The graph object containing cities and connections.
+     * @param startCity    The starting city name.
+     * @param budgetMillis Wall-clock time the search may use, measured from this call.
+     * @return The best path found as a list of city names, or null if the greedy tour does not exist.
+     */
+    public static List<String> solveTSPTW_VNS(Graph graph, String startCity, long budgetMillis) {
+        long deadlineNanos = System.nanoTime() + budgetMillis * 1_000_000L;
+        CompactGraph compactGraph = graph.toCompactGraph();
+        int start = compactGraph.indexOf(startCity);
+        if (start == -1) {
+            return null; // Unknown start city
+        }
+        return compactGraph.toCityNames(solveTSPTW_VNS(compactGraph, start, deadlineNanos, DEFAULT_SEED).getTour());
+    }
+
+    /**
+     * Solves the TSPTW problem until the deadline passes.
+     *
+     * @param graph         The compact graph containing cities and connections.
+     * @param startCity     The starting city id.
+     * @param deadlineNanos {@link System#nanoTime()} value at which the best tour is returned.
+     * @param seed          Seed of the random shakes, the same seed and iteration count give the same tour.
+     * @return the best tour with the search statistics, the tour is null if the greedy tour does not exist
+     */
+    public static Result solveTSPTW_VNS(CompactGraph graph, int startCity, long deadlineNanos, long seed) {
+        return solveTSPTW_VNS(graph, startCity, new SolverControl(deadlineNanos), seed);
+    }
+
+    /**
+     * Solves the TSPTW problem until the control says to stop.
+     *
+     * @param graph     The compact graph containing cities and connections.
+     * @param startCity The starting city id.
+     * @param control   Deadline and cancellation of the run.
+     * @param seed      Seed of the random shakes.
+     * @return the best tour with the search statistics, the tour is null if the greedy tour does not exist
+     */
+    public static Result solveTSPTW_VNS(CompactGraph graph, int startCity, SolverControl control, long seed) {
+        long startNanos = System.nanoTime();
+        Result result = new Result(startNanos);
+
+        int[] tour = Greedy.solveTSPTW_Greedy(graph, startCity);
+        if (tour == null) {
+            result.finish(System.nanoTime());
+            return result;
+        }
+        tour = LocalSearch.improve(graph, tour, 0, tour.length, control);
+        int[] value = graph.calculateFeasiblePathCost(tour);
+        result.offer(tour, value[0], value[1], System.nanoTime());
+
+        Random random = new Random(seed);
+        int[] changed = new int[2]; // First and last position moved by the shake
+        int k = 1;
+        while (!control.shouldStop() && tour.length > 4) {
+            result.iterations++;
+
+            int[] shaken = shake(graph, result.tour, k, random, changed);
+            if (shaken != null) {
+                // Only moves near the shaken positions can find something new
+                int[] improved = LocalSearch.improve(graph, shaken, changed[0] - SHAKE_RANGE,
+                        changed[1] + SHAKE_RANGE + 1, control);
+                value = graph.calculateFeasiblePathCost(improved);
+                if (result.offer(improved, value[0], value[1], System.nanoTime())) {
+                    k = 1;
+                    continue;
+                }
+            }
+            k = k == MAX_SHAKE ? 1 : k + 1;
+        }
+        result.finish(System.nanoTime());
+        return result;
+    }
+
+    /**
+     * Applies k random relocations of short segments to a copy of the tour.
+     *
+     * @param changed Receives the first and last tour position that the relocations moved.
+     * @return a feasible shaken tour, or null if no attempt was feasible
+     */
+    private static int[] shake(CompactGraph graph, int[] tour, int k, Random random, int[] changed) {
+        int last = tour.length - 1; // Index of the closing start city
+        int[] shaken = new int[tour.length];
+        for (int attempt = 0; attempt < SHAKE_ATTEMPTS; attempt++) {
+            System.arraycopy(tour, 0, shaken, 0, tour.length);
+            changed[0] = last;
+            changed[1] = 0;
+            for (int move = 0; move < k; move++) {
+                int length = 1 + random.nextInt(Math.min(LocalSearch.MAX_OR_OPT_LENGTH, last - 2));
+                int from = 1 + random.nextInt(last - length);
+                // Target index of the segment's first city, within the tour's inner positions
+                int lowest = Math.max(1, from - SHAKE_RANGE);
+                int highest = Math.min(last - length, from + SHAKE_RANGE);
+                int to = lowest + random.nextInt(highest - lowest + 1);
+                relocate(shaken, from, length, to);
+                changed[0] = Math.min(changed[0], Math.min(from, to));
+                changed[1] = Math.max(changed[1], Math.max(from, to) + length - 1);
+            }
+            if (graph.calculateFeasiblePathCost(shaken) != null) {
+                return shaken;
+            }
+        }
+        return null;
+    }
+
+    // Moves tour[from..from+length-1] so that it starts at index 'to'
+    private static void relocate(int[] tour, int from, int length, int to) {
+        if (to == from) return;
+        int[] segment = new int[length];
+        System.arraycopy(tour, from, segment, 0, length);
+        if (to < from) {
+            System.arraycopy(tour, to, tour, to + length, from - to);
+        } else {
+            System.arraycopy(tour, from + length, tour, from, to - from);
+        }
+        System.arraycopy(segment, 0, tour, to, length);
+    }
+
+    /**
+     * Best tour of a run, the number of iterations and every improvement of the incumbent.
+     */
+    public static class Result {
+        private final long startNanos;
+        private final List<Improvement> trace = new ArrayList<>();
+        private int[] tour;
+        private int cost = Integer.MAX_VALUE;
+        private int time = Integer.MAX_VALUE;
+        private long iterations;
+        private long elapsedNanos;
+
+        private Result(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        // Keeps the tour if it is cheaper, or returns earlier at the same cost
+        private boolean offer(int[] tour, int cost, int time, long nowNanos) {
+            if (cost < this.cost || (cost == this.cost && time < this.time)) {
+                this.tour = tour;
+                this.cost = cost;
+                this.time = time;
+                trace.add(new Improvement(nowNanos - startNanos, iterations, cost, time));
+                return true;
+            }
+            return false;
+        }
+
+        private void finish(long nowNanos) {
+            elapsedNanos = nowNanos - startNanos;
+        }
+
+        /**
+         * @return the best tour as city ids, or null if no tour was found
+         */
+        public int[] getTour() {
+            return tour;
+        }
+
+        public int getCost() {
+            return cost;
+        }
+
+        public int getTime() {
+            return time;
+        }
+
+        /**
+         * @return the number of shake and improve iterations after the first local search
+         */
+        public long getIterations() {
+            return iterations;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getIterationsPerSecond() {
+            return elapsedNanos == 0 ? 0 : iterations * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * @return every improvement of the best tour in order, the first one is the improved greedy tour
+         */
+        public List<Improvement> getTrace() {
+            return Collections.unmodifiableList(trace);
+        }
+
+        @Override
+        public String toString() {
+            return "VNS {cost=" + (tour == null ? "none" : cost) + ", iterations=" + iterations
+                    + ", iterationsPerSecond=" + Math.round(getIterationsPerSecond())
+                    + ", improvements=" + trace.size() + ", elapsedMillis=" + elapsedNanos / 1_000_000 + "}";
+        }
+    }
+
+    /**
+     * A new best tour: when it was found, after how many iterations, and its cost and return time.
+     */
+    public static class Improvement {
+        private final long elapsedNanos;
+        private final long iteration;
+        private final int cost;
+        private final int time;
+
+        private Improvement(long elapsedNanos, long iteration, int cost, int time) {
+            this.elapsedNanos = elapsedNanos;
+            this.iteration = iteration;
+            this.cost = cost;
+            this.time = time;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public long getIteration() {
+            return iteration;
+        }
+
+        public int getCost() {
+            return cost;
+        }
+
+        public int getTime() {
+            return time;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.1f ms, iteration %d: cost %d, time %d", elapsedNanos / 1e6, iteration, cost, time);
+        }
+    }
+}